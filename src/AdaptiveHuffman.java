@@ -1,25 +1,136 @@
 import java.io.*;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
 
 public class AdaptiveHuffman {
+    // Codecs for the message methods below. A bounded pool rather than a
+    // thread-local, so a server with many short-lived or virtual threads
+    // shares a few warmed-up codecs instead of building one per thread.
+    private static final ArrayBlockingQueue<MessageCodec> MESSAGE_CODECS =
+            new ArrayBlockingQueue<>(2 * Runtime.getRuntime().availableProcessors());
+    
     public static void compress(String inputFileName, String outputFileName) throws IOException {
-        try (BufferedReader reader = new BufferedReader(new FileReader(inputFileName));
-             Encoder encoder = new Encoder(outputFileName)) {
+        compress(inputFileName, outputFileName, new HuffmanOptions());
+    }
+    
+    public static void compress(String inputFileName, String outputFileName, HuffmanOptions options) throws IOException {
+        try (InputStream in = new FileInputStream(inputFileName);
+             AdaptiveHuffmanOutputStream out = new AdaptiveHuffmanOutputStream(
+                     new BufferedOutputStream(new FileOutputStream(outputFileName)), options)) {
             
-            int c;
-            while ((c = reader.read()) != -1) {
-                encoder.encodeSymbol(c);
-            }
+            in.transferTo(out);
         }
     }
     
     public static void decompress(String inputFileName, String outputFileName) throws IOException {
-        try (Decoder decoder = new Decoder(inputFileName);
-             BufferedWriter writer = new BufferedWriter(new FileWriter(outputFileName))) {
+        try (AdaptiveHuffmanInputStream in = new AdaptiveHuffmanInputStream(
+                     new BufferedInputStream(new FileInputStream(inputFileName)));
+             OutputStream out = new FileOutputStream(outputFileName)) {
             
-            int symbol;
-            while ((symbol = decoder. decodeSymbol()) != -1) {
-                writer.write((char) symbol);
-            }
+            in.transferTo(out);
+        }
+    }
+    
+    public static void append(String inputFileName, String compressedFileName) throws IOException {
+        try (InputStream in = new FileInputStream(inputFileName);
+             AdaptiveHuffmanOutputStream out = new AdaptiveHuffmanOutputStream(
+                     new BufferedOutputStream(new FileOutputStream(compressedFileName, true)))) {
+            
+            in.transferTo(out);
+        }
+    }
+    
+    // Compresses one small payload in the headerless message format (see
+    // MessageCodec). With a reused output stream this allocates nothing once
+    // the pooled codecs are warm.
+    public static void compressMessage(byte[] data, int offset, int length, OutputStream out) throws IOException {
+        MessageCodec codec = acquireCodec();
+        try {
+            codec.compress(data, offset, length, out);
+        } finally {
+            MESSAGE_CODECS.offer(codec);
+        }
+    }
+    
+    public static byte[] compressMessage(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 16);
+        compressMessage(data, 0, data.length, out);
+        return out.toByteArray();
+    }
+    
+    // Reads one message from in into out at offset and returns its length.
+    public static int decompressMessage(InputStream in, byte[] out, int offset) throws IOException {
+        MessageCodec codec = acquireCodec();
+        try {
+            return codec.decompress(in, out, offset, out.length - offset);
+        } finally {
+            MESSAGE_CODECS.offer(codec);
+        }
+    }
+    
+    public static byte[] decompressMessage(byte[] compressed) throws IOException {
+        MessageCodec codec = acquireCodec();
+        try {
+            return codec.decompress(new ByteArrayInputStream(compressed));
+        } finally {
+            MESSAGE_CODECS.offer(codec);
+        }
+    }
+    
+    // The same message format, but both sides start from the dictionary's
+    // trained tree instead of an empty one. Messages must be decoded with
+    // the dictionary they were compressed with.
+    public static void compressMessage(byte[] data, int offset, int length, OutputStream out,
+                                       MessageDictionary dictionary) throws IOException {
+        MessageCodec codec = acquireCodec();
+        try {
+            codec.compress(data, offset, length, out, dictionary.getTemplate());
+        } finally {
+            MESSAGE_CODECS.offer(codec);
+        }
+    }
+    
+    public static byte[] compressMessage(byte[] data, MessageDictionary dictionary) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 16);
+        compressMessage(data, 0, data.length, out, dictionary);
+        return out.toByteArray();
+    }
+    
+    public static int decompressMessage(InputStream in, byte[] out, int offset,
+                                        MessageDictionary dictionary) throws IOException {
+        MessageCodec codec = acquireCodec();
+        try {
+            return codec.decompress(in, out, offset, out.length - offset, dictionary.getTemplate());
+        } finally {
+            MESSAGE_CODECS.offer(codec);
+        }
+    }
+    
+    public static byte[] decompressMessage(byte[] compressed, MessageDictionary dictionary) throws IOException {
+        MessageCodec codec = acquireCodec();
+        try {
+            return codec.decompress(new ByteArrayInputStream(compressed), dictionary.getTemplate());
+        } finally {
+            MESSAGE_CODECS.offer(codec);
+        }
+    }
+    
+    private static MessageCodec acquireCodec() {
+        MessageCodec codec = MESSAGE_CODECS.poll();
+        return codec != null ? codec : new MessageCodec();
+    }
+    
+    // Codes a delimited file in COLUMNS mode without keeping the output,
+    // just to see what each column costs.
+    public static ColumnStatistics analyzeColumns(String inputFileName, int delimiter) throws IOException {
+        HuffmanOptions options = new HuffmanOptions().mode(HuffmanOptions.Mode.COLUMNS).delimiter(delimiter);
+        try (InputStream in = new FileInputStream(inputFileName);
+             AdaptiveHuffmanOutputStream out = new AdaptiveHuffmanOutputStream(OutputStream.nullOutputStream(), options)) {
+            
+            in.transferTo(out);
+            out.finish();
+            return out.getColumnStatistics();
         }
     }
     
@@ -37,20 +148,59 @@ public class AdaptiveHuffman {
         return (double) compressedSize / originalSize;
     }
     
+    private static HuffmanOptions.Mode parseMode(String name) {
+        try {
+            return HuffmanOptions.Mode.valueOf(name.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown mode: " + name);
+        }
+    }
+    
+    private static int parseRequest(String name) {
+        switch (name.toLowerCase()) {
+            case "compress": return HuffmanDaemon.OP_COMPRESS;
+            case "decompress": return HuffmanDaemon.OP_DECOMPRESS;
+            case "compress_message": return HuffmanDaemon.OP_COMPRESS_MESSAGE;
+            case "decompress_message": return HuffmanDaemon.OP_DECOMPRESS_MESSAGE;
+            default: throw new IllegalArgumentException("Unknown request: " + name);
+        }
+    }
+    
+    private static void printUsage() {
+        System.out.println("Usage: java AdaptiveHuffman [compress|decompress|append|analyze] inputFile outputFile");
+        System.out.println("       java AdaptiveHuffman compress inputFile outputFile [order0|order1|auto|semi_adaptive|static|range|lz77|bwt|rle|nibble|interleaved|word|columns]");
+        System.out.println("       java AdaptiveHuffman batch outputDirectory input... (files, directories, globs, @listFile)");
+        System.out.println("       java AdaptiveHuffman archive inputDirectory archiveFile");
+        System.out.println("       java AdaptiveHuffman extract archiveFile outputDirectory [member]");
+        System.out.println("       java AdaptiveHuffman list archiveFile");
+        System.out.println("       java AdaptiveHuffman daemon socketFile [workers]");
+        System.out.println("       java AdaptiveHuffman client socketFile [compress|decompress|compress_message|decompress_message] < in > out");
+    }
+    
     public static void main(String[] args) {
-        if (args.length < 3) {
-            System.out.println("Usage: java AdaptiveHuffman [compress|decompress|analyze] inputFile outputFile");
+        boolean twoArguments = args.length == 2
+                && (args[0].equalsIgnoreCase("list") || args[0].equalsIgnoreCase("daemon"));
+        if (args.length < 3 && !twoArguments) {
+            printUsage();
             return;
         }
         
         String operation = args[0].toLowerCase();
         String inputFile = args[1];
-        String outputFile = args[2];
+        String outputFile = twoArguments ? null : args[2];
+        int threads = Runtime.getRuntime().availableProcessors();
         
         try {
             if (operation.equals("compress")) {
+                HuffmanOptions options = new HuffmanOptions();
+                if (args.length > 3) {
+                    options.mode(parseMode(args[3]));
+                }
+                if (inputFile.toLowerCase().endsWith(".tsv")) {
+                    options.delimiter('\t');
+                }
                 System.out.println("Compressing " + inputFile + " to " + outputFile);
-                compress(inputFile, outputFile);
+                compress(inputFile, outputFile, options);
                 System.out.println("Compression complete.");
                 
                 double ratio = calculateCompressionRatio(inputFile, outputFile);
@@ -63,16 +213,95 @@ public class AdaptiveHuffman {
                 decompress(inputFile, outputFile);
                 System.out.println("Decompression complete.");
                 
+            } else if (operation.equals("append")) {
+                System.out.println("Appending " + inputFile + " to " + outputFile);
+                append(inputFile, outputFile);
+                System.out.println("Append complete.");
+                System.out.println("Compressed size: " + new File(outputFile).length() + " bytes");
+                
             } else if (operation.equals("analyze")) {
                 double ratio = calculateCompressionRatio(inputFile, outputFile);
                 System.out.printf("Compression ratio: %.2f (%.2f%%)\n", ratio, ratio * 100);
                 System.out.println("Original size: " + new File(inputFile).length() + " bytes");
                 System.out.println("Compressed size: " + new File(outputFile).length() + " bytes");
                 
+                String name = inputFile.toLowerCase();
+                if (name.endsWith(".csv") || name.endsWith(".tsv")) {
+                    ColumnStatistics columns = analyzeColumns(inputFile, name.endsWith(".tsv") ? '\t' : ',');
+                    if (columns != null) {
+                        System.out.println("Per-column cost in columns mode:");
+                        System.out.print(columns);
+                    }
+                }
+                
+            } else if (operation.equals("batch")) {
+                String outputDirectory = args[1];
+                List<java.nio.file.Path> inputs = BatchCompressor.expandInputs(Arrays.asList(args).subList(2, args.length));
+                System.out.println("Compressing " + inputs.size() + " files to " + outputDirectory);
+                BatchCompressor.Summary summary = BatchCompressor.compress(inputs, outputDirectory, new HuffmanOptions(),
+                        BatchCompressor.DEFAULT_MAX_OPEN_FILES, threads);
+                System.out.print(summary);
+                
+            } else if (operation.equals("daemon")) {
+                int workers = args.length > 2 ? Integer.parseInt(args[2]) : threads;
+                HuffmanDaemon daemon = new HuffmanDaemon(java.nio.file.Paths.get(inputFile), workers);
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                    try {
+                        daemon.close();
+                    } catch (IOException e) {
+                        System.err.println("Error: " + e.getMessage());
+                    }
+                }));
+                System.out.println("Listening on " + inputFile + " with " + workers + " workers");
+                try {
+                    daemon.awaitClose();
+                } catch (InterruptedException e) {
+                    daemon.close();
+                }
+                
+            } else if (operation.equals("client")) {
+                // Only the payload goes to stdout, and failures exit non-zero
+                // so shell pipelines notice.
+                OutputStream out = new BufferedOutputStream(new FileOutputStream(FileDescriptor.out));
+                try {
+                    HuffmanDaemon.request(java.nio.file.Paths.get(inputFile), parseRequest(args[2]), System.in, out);
+                    out.flush();
+                } catch (IOException e) {
+                    out.flush();
+                    System.err.println("Error: " + e.getMessage());
+                    System.exit(1);
+                }
+                
+            } else if (operation.equals("archive")) {
+                System.out.println("Archiving " + inputFile + " to " + outputFile);
+                List<HuffmanArchive.Entry> entries = HuffmanArchive.pack(inputFile, outputFile, threads);
+                System.out.println("Archived " + entries.size() + " files.");
+                System.out.println("Archive size: " + new File(outputFile).length() + " bytes");
+                
+            } else if (operation.equals("extract")) {
+                if (args.length > 3) {
+                    String member = args[3];
+                    System.out.println("Extracting " + member + " from " + inputFile);
+                    HuffmanArchive.extractMember(inputFile, member, outputFile);
+                } else {
+                    System.out.println("Extracting " + inputFile + " to " + outputFile);
+                    HuffmanArchive.extractAll(inputFile, outputFile, threads);
+                }
+                System.out.println("Extraction complete.");
+                
+            } else if (operation.equals("list")) {
+                for (HuffmanArchive.Entry entry : HuffmanArchive.list(inputFile)) {
+                    System.out.printf("%10d %10d  %08x  %s\n",
+                            entry.originalSize, entry.compressedSize, entry.crc, entry.name);
+                }
+                
             } else {
                 System.out.println("Unknown operation: " + operation);
-                System.out.println("Usage: java AdaptiveHuffman [compress|decompress|analyze] inputFile outputFile");
+                printUsage();
             }
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            printUsage();
         } catch (IOException e) {
             System.err.println("Error: " + e.getMessage());
             e.printStackTrace();
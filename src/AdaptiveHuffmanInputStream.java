@@ -0,0 +1,254 @@
+import java.io.*;
+import java.util.Arrays;
+import java.util.Objects;
+
+public class AdaptiveHuffmanInputStream extends FilterInputStream {
+    private final DataInputStream dataIn;
+    private final BlockSource source;
+    private final Decoder.BitInputStream bitIn;
+    private final Decoder decoder;
+    // Takes the output of stored blocks replayed through their coder.
+    private final Encoder replay = new Encoder(new Encoder.BitOutputStream(OutputStream.nullOutputStream()));
+    private HuffmanOptions options;
+    private int version;
+    private final BlockCoder[] coders;
+    private byte[] coded;
+    private byte[] decoded;
+    private byte[] scratch = new byte[0];
+    private int pos;
+    private int limit;
+    private boolean headerRead;
+    private boolean eof;
+    private boolean closed;
+
+    public AdaptiveHuffmanInputStream(InputStream in) {
+        super(in);
+        dataIn = new DataInputStream(in);
+        source = new BlockSource();
+        bitIn = new Decoder.BitInputStream(source);
+        decoder = new Decoder(bitIn);
+        coders = new BlockCoder[AdaptiveHuffmanOutputStream.BLOCK_TYPES];
+        coded = new byte[0];
+        decoded = new byte[0];
+    }
+
+    public ContextTreePool getContextTreePool() {
+        BlockCoder coder = coders[AdaptiveHuffmanOutputStream.BLOCK_ORDER1];
+        return coder == null ? null : ((Order1Coder) coder).getPool();
+    }
+
+    @Override
+    public int read() throws IOException {
+        ensureOpen();
+        if (pos >= limit && !fill()) return -1;
+        return decoded[pos++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        Objects.checkFromIndexSize(off, len, b.length);
+        ensureOpen();
+        if (len == 0) return 0;
+
+        // Only decode a new block when nothing is buffered, so data up to a
+        // flush point is handed out without waiting for the next block.
+        int n = 0;
+        while (n < len) {
+            if (pos >= limit && (n > 0 || !fill())) break;
+            int count = Math.min(len - n, limit - pos);
+            System.arraycopy(decoded, pos, b, off + n, count);
+            pos += count;
+            n += count;
+        }
+        return n == 0 ? -1 : n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        ensureOpen();
+        long skipped = 0;
+        while (skipped < n) {
+            if (pos >= limit && (skipped > 0 || !fill())) break;
+            int count = (int) Math.min(n - skipped, limit - pos);
+            pos += count;
+            skipped += count;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        ensureOpen();
+        return limit - pos;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        in.close();
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+
+    private void readHeader(int firstByte) throws IOException {
+        int magic = (firstByte << 8) | dataIn.readUnsignedByte();
+        if (magic != AdaptiveHuffmanOutputStream.MAGIC) {
+            throw new IOException("Not an adaptive Huffman stream");
+        }
+        version = dataIn.readUnsignedByte();
+        if (version < AdaptiveHuffmanOutputStream.MIN_VERSION || version > AdaptiveHuffmanOutputStream.VERSION) {
+            throw new IOException("Unsupported stream version: " + version);
+        }
+        decoder.setLegacyEscapes(version == 1);
+        options = HuffmanOptions.readHeader(dataIn, version);
+        Arrays.fill(coders, null);
+        headerRead = true;
+    }
+
+    private boolean fill() throws IOException {
+        if (eof) return false;
+        if (!headerRead) readHeader(dataIn.readUnsignedByte());
+
+        int type = dataIn.readUnsignedByte();
+        while (type == AdaptiveHuffmanOutputStream.BLOCK_END) {
+            if (!nextMember()) {
+                eof = true;
+                return false;
+            }
+            type = dataIn.readUnsignedByte();
+        }
+        if (type >= coders.length) {
+            throw new IOException("Unknown block type: " + type);
+        }
+
+        int rawLength;
+        int codedLength;
+        if (version >= 3) {
+            rawLength = Varint.read(dataIn);
+            codedLength = type == AdaptiveHuffmanOutputStream.BLOCK_STORED ? rawLength : Varint.read(dataIn);
+        } else {
+            rawLength = dataIn.readInt();
+            codedLength = dataIn.readInt();
+        }
+        if (rawLength < 0 || codedLength < 0 || rawLength > HuffmanOptions.MAX_BLOCK_SIZE
+                || codedLength > HuffmanOptions.MAX_BLOCK_SIZE) {
+            throw new IOException("Corrupt block header");
+        }
+
+        if (type == AdaptiveHuffmanOutputStream.BLOCK_STORED) {
+            if (codedLength != rawLength) {
+                throw new IOException("Corrupt stored block header");
+            }
+            if (version < 3) {
+                decoded = readBlock(decoded, rawLength);
+                AdaptiveHuffmanOutputStream.resetCoders(coders);
+                return finishBlock(rawLength);
+            }
+            int model = dataIn.readUnsignedByte();
+            int coder = model & ~AdaptiveHuffmanOutputStream.MODEL_RESET;
+            boolean reset = model != coder;
+            if (coder >= coders.length || coder == AdaptiveHuffmanOutputStream.BLOCK_STORED
+                    || (coder == AdaptiveHuffmanOutputStream.BLOCK_END && reset)
+                    || (!reset && rawLength > AdaptiveHuffmanOutputStream.MAX_REPLAY_LENGTH
+                            && coder != AdaptiveHuffmanOutputStream.BLOCK_END)) {
+                throw new IOException("Corrupt stored block model: " + model);
+            }
+            decoded = readBlock(decoded, rawLength);
+            if (reset) {
+                if (coders[coder] != null) coders[coder].reset();
+            } else if (coder != AdaptiveHuffmanOutputStream.BLOCK_END) {
+                // The encoder coded this short block before storing it; catch up.
+                if (coders[coder] == null) {
+                    coders[coder] = AdaptiveHuffmanOutputStream.createCoder(coder, options);
+                }
+                coders[coder].encodeBlock(replay, decoded, rawLength);
+            }
+            return finishBlock(rawLength);
+        }
+
+        coded = readBlock(coded, codedLength);
+        if (decoded.length < rawLength) decoded = new byte[rawLength];
+
+        if (coders[type] == null) {
+            coders[type] = AdaptiveHuffmanOutputStream.createCoder(type, options);
+        }
+        source.reset(coded, codedLength);
+        bitIn.clear();
+        coders[type].decodeBlock(decoder, decoded, rawLength);
+        return finishBlock(rawLength);
+    }
+
+    // Reads length bytes into buffer, growing it only as the bytes arrive,
+    // so a corrupt length on truncated input fails before it costs more
+    // than about twice the data actually there.
+    private byte[] readBlock(byte[] buffer, int length) throws IOException {
+        int filled = 0;
+        while (filled < length) {
+            if (filled == buffer.length) {
+                buffer = Arrays.copyOf(buffer, (int) Math.min(length, Math.max(2L * filled, 64 * 1024)));
+            }
+            int n = Math.min(length, buffer.length) - filled;
+            try {
+                dataIn.readFully(buffer, filled, n);
+            } catch (EOFException e) {
+                throw new EOFException("Truncated block: " + length + " bytes expected");
+            }
+            filled += n;
+        }
+        return buffer;
+    }
+
+    private boolean finishBlock(int rawLength) {
+        if (options.getTransform() != HuffmanOptions.Transform.NONE) {
+            if (scratch.length < rawLength) scratch = new byte[rawLength];
+            RecordTransform.inverse(options.getTransform(), options.getTransformWidth(), decoded, rawLength, scratch);
+        }
+        pos = 0;
+        limit = rawLength;
+        return true;
+    }
+
+    // Concatenated members decode as one stream; each member starts with fresh coders.
+    private boolean nextMember() throws IOException {
+        int firstByte = dataIn.read();
+        if (firstByte == -1) return false;
+        readHeader(firstByte);
+        return true;
+    }
+
+    private static class BlockSource extends InputStream {
+        private byte[] buf;
+        private int pos;
+        private int limit;
+
+        void reset(byte[] buf, int limit) {
+            this.buf = buf;
+            this.pos = 0;
+            this.limit = limit;
+        }
+
+        @Override
+        public int read() {
+            return pos < limit ? buf[pos++] & 0xFF : -1;
+        }
+    }
+}
@@ -0,0 +1,287 @@
+import java.io.*;
+import java.util.Objects;
+
+/*
+ * Stream layout (one member):
+ *   magic (2 bytes) | version (1 byte) | options (see HuffmanOptions)
+ *   blocks: type (1 byte) | raw length (varint) | coded length (varint) | coded bytes
+ *   stored: BLOCK_STORED | raw length (varint) | model (1 byte) | raw bytes
+ *   end:    BLOCK_END (1 byte)
+ *
+ * The block type names the BlockCoder that produced it. Coder models carry
+ * over from one block to the next, so blocks only exist to byte-align the bit
+ * stream and tell the decoder how many symbols follow.
+ * flush() closes the current block early without touching the tree, so
+ * everything written so far can be decoded as soon as it arrives. Lengths
+ * are varints (see Varint), so a short flushed block costs three bytes of
+ * framing rather than nine.
+ *
+ * A block whose coded form is not smaller than its raw bytes is written as a
+ * BLOCK_STORED copy instead, which the decoder reads with one bulk copy.
+ * The coder that coded it has already learned from it, and the model byte
+ * tells the decoder how to catch up:
+ *   0 (BLOCK_END, never a coder): no coder saw the block, as when
+ *       ModelSelector picks stored; every model stays as it was
+ *   type: a block of at most MAX_REPLAY_LENGTH bytes, run through that
+ *       coder's encodeBlock with the output discarded, so a short flushed
+ *       block doesn't throw away what was learned so far
+ *   type | MODEL_RESET: a longer block; both sides reset that coder, so
+ *       incompressible data never costs the decoder more than a copy
+ * Before version 3 every stored block reset all coders.
+ * In AUTO mode the type is picked per block by ModelSelector before any
+ * coding happens.
+ * A RecordTransform, if configured, is applied to each block before all of
+ * this, stored blocks included.
+ */
+public class AdaptiveHuffmanOutputStream extends FilterOutputStream {
+    static final int MAGIC = 0xAD48;
+    // Version 3 writes block lengths and option values as varints, and only
+    // options that differ from the defaults; version 2 codes new symbols
+    // by their index among the unseen ones. Version 1 streams, with raw
+    // symbol bits, and versions 1 and 2 with int lengths are still readable.
+    static final int VERSION = 3;
+    static final int MIN_VERSION = 1;
+
+    static final int BLOCK_END = 0;
+    static final int BLOCK_HUFFMAN = 1;
+    static final int BLOCK_STORED = 2;
+    static final int BLOCK_ORDER1 = 3;
+    static final int BLOCK_SEMI_ADAPTIVE = 4;
+    static final int BLOCK_STATIC = 5;
+    static final int BLOCK_RANGE = 6;
+    static final int BLOCK_LZ77 = 7;
+    static final int BLOCK_BWT = 8;
+    static final int BLOCK_RLE = 9;
+    static final int BLOCK_NIBBLE = 10;
+    static final int BLOCK_INTERLEAVED = 11;
+    static final int BLOCK_WORD = 12;
+    static final int BLOCK_COLUMNS = 13;
+    static final int BLOCK_TYPES = 14;
+
+    static final int MAX_REPLAY_LENGTH = 4096;
+    static final int MODEL_RESET = 0x80;
+
+    public static final int DEFAULT_BLOCK_SIZE = HuffmanOptions.DEFAULT_BLOCK_SIZE;
+
+    private final DataOutputStream dataOut;
+    private final byte[] block;
+    private final byte[] transformed;
+    private int blockLength;
+    private final ByteArrayOutputStream codedBlock;
+    private final Encoder.BitOutputStream bitOut;
+    private final Encoder encoder;
+    private final HuffmanOptions options;
+    private final BlockCoder[] coders;
+    private ModelSelector selector;
+    private boolean headerWritten;
+    private boolean finished;
+    private boolean closed;
+
+    public AdaptiveHuffmanOutputStream(OutputStream out) {
+        this(out, DEFAULT_BLOCK_SIZE);
+    }
+
+    public AdaptiveHuffmanOutputStream(OutputStream out, int blockSize) {
+        this(out, new HuffmanOptions().blockSize(blockSize));
+    }
+
+    public AdaptiveHuffmanOutputStream(OutputStream out, HuffmanOptions options) {
+        super(out);
+        this.options = options;
+        dataOut = new DataOutputStream(out);
+        block = new byte[options.getBlockSize()];
+        transformed = options.getTransform() == HuffmanOptions.Transform.NONE ? block : new byte[block.length];
+        codedBlock = new ByteArrayOutputStream(block.length / 2);
+        bitOut = new Encoder.BitOutputStream(codedBlock);
+        encoder = new Encoder(bitOut);
+        coders = new BlockCoder[BLOCK_TYPES];
+    }
+
+    public ContextTreePool getContextTreePool() {
+        return coders[BLOCK_ORDER1] == null ? null : ((Order1Coder) coders[BLOCK_ORDER1]).getPool();
+    }
+
+    public ColumnStatistics getColumnStatistics() {
+        return coders[BLOCK_COLUMNS] == null ? null : ((ColumnCoder) coders[BLOCK_COLUMNS]).getStatistics();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        block[blockLength++] = (byte) b;
+        if (blockLength == block.length) {
+            writeBlock();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        Objects.checkFromIndexSize(off, len, b.length);
+        ensureOpen();
+        while (len > 0) {
+            int n = Math.min(len, block.length - blockLength);
+            System.arraycopy(b, off, block, blockLength, n);
+            blockLength += n;
+            off += n;
+            len -= n;
+            if (blockLength == block.length) {
+                writeBlock();
+            }
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (!finished) {
+            writeBlock();
+        }
+        dataOut.flush();
+    }
+
+    public void finish() throws IOException {
+        if (finished) return;
+        writeBlock();
+        writeHeader();
+        dataOut.writeByte(BLOCK_END);
+        dataOut.flush();
+        finished = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (finished) {
+            throw new IOException("Stream already finished");
+        }
+    }
+
+    private void writeHeader() throws IOException {
+        if (headerWritten) return;
+        dataOut.writeShort(MAGIC);
+        dataOut.writeByte(VERSION);
+        options.writeHeader(dataOut);
+        headerWritten = true;
+    }
+
+    static BlockCoder createCoder(int type, HuffmanOptions options) throws IOException {
+        switch (type) {
+            case BLOCK_HUFFMAN:
+                return new Order0Coder(options.getBatchSize(), options.getBatchThreshold());
+            case BLOCK_ORDER1:
+                return new Order1Coder(options.getContextPoolSize());
+            case BLOCK_SEMI_ADAPTIVE:
+                return new SemiAdaptiveCoder(options.getFreezeAfter(), options.isRefreeze());
+            case BLOCK_STATIC:
+                return new StaticHuffmanCoder();
+            case BLOCK_RANGE:
+                return new RangeCoder();
+            case BLOCK_LZ77:
+                return new LZ77Coder(options.getLzLevel());
+            case BLOCK_BWT:
+                return new BWTCoder();
+            case BLOCK_RLE:
+                return new RunLengthCoder(options.getRunThreshold());
+            case BLOCK_NIBBLE:
+                return new NibbleCoder();
+            case BLOCK_INTERLEAVED:
+                return new InterleavedCoder(options.getStreams());
+            case BLOCK_WORD:
+                return new WordCoder();
+            case BLOCK_COLUMNS:
+                return new ColumnCoder(options.getDelimiter(), options.getMaxColumns());
+            default:
+                throw new IOException("Unknown block type: " + type);
+        }
+    }
+
+    static void resetCoders(BlockCoder[] coders) {
+        for (BlockCoder coder : coders) {
+            if (coder != null) coder.reset();
+        }
+    }
+
+    private int blockType(byte[] data) {
+        switch (options.getMode()) {
+            case ORDER1:
+                return BLOCK_ORDER1;
+            case SEMI_ADAPTIVE:
+                return BLOCK_SEMI_ADAPTIVE;
+            case STATIC:
+                return BLOCK_STATIC;
+            case RANGE:
+                return BLOCK_RANGE;
+            case LZ77:
+                return BLOCK_LZ77;
+            case BWT:
+                return BLOCK_BWT;
+            case RLE:
+                return BLOCK_RLE;
+            case NIBBLE:
+                return BLOCK_NIBBLE;
+            case INTERLEAVED:
+                return BLOCK_INTERLEAVED;
+            case WORD:
+                return BLOCK_WORD;
+            case COLUMNS:
+                return BLOCK_COLUMNS;
+            case AUTO:
+                if (selector == null) {
+                    selector = new ModelSelector(options.getSampleSize());
+                }
+                return selector.select(data, blockLength);
+            default:
+                return BLOCK_HUFFMAN;
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        if (blockLength == 0) return;
+        writeHeader();
+
+        byte[] data = block;
+        if (transformed != block) {
+            RecordTransform.forward(options.getTransform(), options.getTransformWidth(), block, blockLength, transformed);
+            data = transformed;
+        }
+
+        int type = blockType(data);
+        if (type != BLOCK_STORED) {
+            if (coders[type] == null) {
+                coders[type] = createCoder(type, options);
+            }
+            coders[type].encodeBlock(encoder, data, blockLength);
+            bitOut.padToByte();
+        }
+
+        if (type != BLOCK_STORED && codedBlock.size() < blockLength) {
+            dataOut.writeByte(type);
+            Varint.write(dataOut, blockLength);
+            Varint.write(dataOut, codedBlock.size());
+            codedBlock.writeTo(dataOut);
+        } else {
+            int model = BLOCK_END;
+            if (type != BLOCK_STORED && blockLength <= MAX_REPLAY_LENGTH) {
+                model = type;
+            } else if (type != BLOCK_STORED) {
+                coders[type].reset();
+                model = type | MODEL_RESET;
+            }
+            dataOut.writeByte(BLOCK_STORED);
+            Varint.write(dataOut, blockLength);
+            dataOut.writeByte(model);
+            dataOut.write(data, 0, blockLength);
+        }
+
+        codedBlock.reset();
+        blockLength = 0;
+    }
+}
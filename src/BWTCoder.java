@@ -0,0 +1,203 @@
+import java.io.*;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/*
+ * Burrows-Wheeler transform, move-to-front and zero-run coding in front of
+ * one adaptive tree. A block is cut into segments of at most SEGMENT_SIZE
+ * bytes, which are transformed (and inverted on decode) in parallel; only
+ * the tree coding runs in order. Each segment starts with its 32-bit primary
+ * index.
+ *
+ * Runs of MTF zeros are written in bijective base 2 with RUN_A/RUN_B, as in
+ * bzip2, and other MTF values v as v + 1. Value 255 doesn't fit in a byte
+ * symbol, so symbol 255 is followed by one raw bit choosing 254 or 255.
+ */
+class BWTCoder implements BlockCoder {
+    static final int SEGMENT_SIZE = 256 * 1024;
+    private static final int RUN_A = 0;
+    private static final int RUN_B = 1;
+
+    private final HuffmanTree tree = new HuffmanTree();
+
+    @Override
+    public void encodeBlock(Encoder encoder, byte[] block, int length) throws IOException {
+        int segments = segmentCount(length);
+        byte[][] transformed = new byte[segments][];
+        int[] primary = new int[segments];
+        IntStream.range(0, segments).parallel().forEach(s -> {
+            int from = s * SEGMENT_SIZE;
+            int n = Math.min(length, from + SEGMENT_SIZE) - from;
+            transformed[s] = new byte[n];
+            primary[s] = transform(block, from, n, transformed[s]);
+        });
+
+        for (int s = 0; s < segments; s++) {
+            encoder.writeBits(primary[s], 32);
+            writeMoveToFront(encoder, transformed[s]);
+        }
+    }
+
+    @Override
+    public void decodeBlock(Decoder decoder, byte[] block, int length) throws IOException {
+        int segments = segmentCount(length);
+        byte[][] transformed = new byte[segments][];
+        int[] primary = new int[segments];
+        for (int s = 0; s < segments; s++) {
+            int n = Math.min(length, (s + 1) * SEGMENT_SIZE) - s * SEGMENT_SIZE;
+            primary[s] = decoder.readBits(32);
+            if (primary[s] < 0 || primary[s] > n) {
+                throw new IOException("Corrupt BWT primary index: " + primary[s]);
+            }
+            transformed[s] = readMoveToFront(decoder, n);
+        }
+
+        IntStream.range(0, segments).parallel().forEach(s ->
+                inverse(transformed[s], primary[s], block, s * SEGMENT_SIZE));
+    }
+
+    @Override
+    public void reset() {
+        tree.reset();
+    }
+
+    private static int segmentCount(int length) {
+        return (length + SEGMENT_SIZE - 1) / SEGMENT_SIZE;
+    }
+
+    private void writeMoveToFront(Encoder encoder, byte[] data) throws IOException {
+        byte[] order = identityOrder();
+        int zeros = 0;
+        for (byte b : data) {
+            int value = 0;
+            while (order[value] != b) {
+                value++;
+            }
+            System.arraycopy(order, 0, order, 1, value);
+            order[0] = b;
+
+            if (value == 0) {
+                zeros++;
+                continue;
+            }
+            writeZeroRun(encoder, zeros);
+            zeros = 0;
+            if (value >= 254) {
+                encoder.encodeSymbol(tree, 255);
+                encoder.writeBits(value - 254, 1);
+            } else {
+                encoder.encodeSymbol(tree, value + 1);
+            }
+        }
+        writeZeroRun(encoder, zeros);
+    }
+
+    private void writeZeroRun(Encoder encoder, int run) throws IOException {
+        while (run > 0) {
+            run--;
+            encoder.encodeSymbol(tree, (run & 1) == 0 ? RUN_A : RUN_B);
+            run >>>= 1;
+        }
+    }
+
+    private byte[] readMoveToFront(Decoder decoder, int length) throws IOException {
+        byte[] order = identityOrder();
+        byte[] data = new byte[length];
+        int i = 0;
+        int run = 0;
+        int weight = 1;
+        while (i < length) {
+            int symbol = decoder.decodeSymbol(tree);
+            if (symbol == -1) {
+                throw new EOFException("Truncated block");
+            }
+            if (symbol == RUN_A || symbol == RUN_B) {
+                run += weight << symbol;
+                weight <<= 1;
+                if (run > length - i) {
+                    throw new IOException("Corrupt BWT zero run");
+                }
+                // A run that fills the segment can't take another digit.
+                if (run == length - i) {
+                    Arrays.fill(data, i, length, order[0]);
+                    i = length;
+                }
+                continue;
+            }
+
+            Arrays.fill(data, i, i + run, order[0]);
+            i += run;
+            run = 0;
+            weight = 1;
+            if (i == length) {
+                throw new IOException("Corrupt BWT block: too many symbols");
+            }
+
+            int value = symbol == 255 ? 254 + decoder.readBits(1) : symbol - 1;
+            byte b = order[value];
+            System.arraycopy(order, 0, order, 1, value);
+            order[0] = b;
+            data[i++] = b;
+        }
+        return data;
+    }
+
+    private static byte[] identityOrder() {
+        byte[] order = new byte[256];
+        for (int i = 0; i < 256; i++) {
+            order[i] = (byte) i;
+        }
+        return order;
+    }
+
+    // Writes the last column of the sorted rotations of data + sentinel into
+    // out, leaving out the sentinel itself, and returns the row it was in.
+    static int transform(byte[] data, int from, int n, byte[] out) {
+        int[] text = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            text[i] = (data[from + i] & 0xFF) + 1;
+        }
+        int[] sa = new int[n + 1];
+        SuffixArray.build(text, sa, n + 1, 257);
+
+        int primary = 0;
+        int j = 0;
+        for (int i = 0; i <= n; i++) {
+            if (sa[i] == 0) {
+                primary = i;
+            } else {
+                out[j++] = data[from + sa[i] - 1];
+            }
+        }
+        return primary;
+    }
+
+    static void inverse(byte[] last, int primary, byte[] out, int offset) {
+        int n = last.length;
+        int[] starts = new int[256];
+        for (byte b : last) {
+            starts[b & 0xFF]++;
+        }
+        // Row 0 of the first column is the sentinel.
+        int sum = 1;
+        for (int c = 0; c < 256; c++) {
+            int count = starts[c];
+            starts[c] = sum;
+            sum += count;
+        }
+
+        // next[row] is the row of the rotation starting one character earlier.
+        int[] next = new int[n + 1];
+        for (int row = 0; row <= n; row++) {
+            if (row == primary) continue;
+            int c = last[row < primary ? row : row - 1] & 0xFF;
+            next[row] = starts[c]++;
+        }
+
+        int row = 0;
+        for (int k = n - 1; k >= 0; k--) {
+            out[offset + k] = last[row < primary ? row : row - 1];
+            row = next[row];
+        }
+    }
+}
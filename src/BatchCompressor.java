@@ -0,0 +1,202 @@
+import java.io.*;
+import java.lang.reflect.Method;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/*
+ * Compresses many files in one JVM, each to outputDirectory/<input path>.ahc.
+ * Every file gets its own task: a virtual thread when the runtime has them
+ * (looked up reflectively, so this still runs on 17), otherwise a fixed pool
+ * of codingThreads. Two semaphores bound the work either way:
+ *   files:  held for a whole task, so at most maxOpenFiles inputs are open
+ *           at once
+ *   coding: held while a file streams through the coder, so at most
+ *           codingThreads files are coded at the same time
+ * Files are streamed, never read whole, so their size isn't limited by the
+ * heap. A file that can't be read, coded or written is reported and
+ * counted, its partial output removed; the rest carry on. So is an input
+ * whose output path another input already took (a/x and ../a/x both map
+ * to a/x.ahc), rather than letting the two overwrite each other.
+ */
+public class BatchCompressor {
+    static final String SUFFIX = ".ahc";
+    static final int DEFAULT_MAX_OPEN_FILES = 64;
+
+    public static class Summary {
+        public final int files;
+        public final int failures;
+        public final long inputBytes;
+        public final long outputBytes;
+        public final long elapsedNanos;
+        public final boolean virtualThreads;
+
+        Summary(int files, int failures, long inputBytes, long outputBytes, long elapsedNanos, boolean virtualThreads) {
+            this.files = files;
+            this.failures = failures;
+            this.inputBytes = inputBytes;
+            this.outputBytes = outputBytes;
+            this.elapsedNanos = elapsedNanos;
+            this.virtualThreads = virtualThreads;
+        }
+
+        @Override
+        public String toString() {
+            double seconds = elapsedNanos / 1e9;
+            return String.format("Compressed %d files (%d errors) on %s in %.2f s%n"
+                    + "Input: %d bytes, output: %d bytes, ratio %.3f%n"
+                    + "Throughput: %.2f MB/s, %.0f files/s%n",
+                    files - failures, failures, virtualThreads ? "virtual threads" : "a fixed thread pool", seconds,
+                    inputBytes, outputBytes, inputBytes == 0 ? 0 : (double) outputBytes / inputBytes,
+                    inputBytes / 1e6 / seconds, files / seconds);
+        }
+    }
+
+    // Expands arguments into files: "@list" reads one path per line, an
+    // argument with *, ?, [ or { is a glob, a directory contributes every
+    // regular file under it, anything else is taken as a file.
+    public static List<Path> expandInputs(List<String> arguments) throws IOException {
+        Set<Path> inputs = new LinkedHashSet<>();
+        for (String argument : arguments) {
+            if (argument.startsWith("@")) {
+                for (String line : Files.readAllLines(Paths.get(argument.substring(1)))) {
+                    if (!line.isBlank()) inputs.add(Paths.get(line.trim()));
+                }
+            } else if (argument.chars().anyMatch(c -> "*?[{".indexOf(c) >= 0)) {
+                inputs.addAll(glob(argument));
+            } else if (Files.isDirectory(Paths.get(argument))) {
+                try (Stream<Path> walk = Files.walk(Paths.get(argument))) {
+                    inputs.addAll(walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList()));
+                }
+            } else {
+                inputs.add(Paths.get(argument));
+            }
+        }
+        return new ArrayList<>(inputs);
+    }
+
+    private static List<Path> glob(String pattern) throws IOException {
+        int wildcard = 0;
+        while ("*?[{".indexOf(pattern.charAt(wildcard)) < 0) {
+            wildcard++;
+        }
+        int slash = pattern.lastIndexOf('/', wildcard);
+        Path base = slash < 0 ? Paths.get(".") : Paths.get(slash == 0 ? "/" : pattern.substring(0, slash));
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+        try (Stream<Path> walk = Files.walk(base)) {
+            return walk.filter(Files::isRegularFile)
+                    .map(path -> slash < 0 ? base.relativize(path) : path)
+                    .filter(matcher::matches)
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    public static Summary compress(List<Path> inputs, String outputDirectory, HuffmanOptions options,
+                                   int maxOpenFiles, int codingThreads) throws IOException {
+        if (maxOpenFiles < 1 || codingThreads < 1) {
+            throw new IllegalArgumentException("maxOpenFiles and codingThreads must be at least 1");
+        }
+        Path outputRoot = Paths.get(outputDirectory);
+        Semaphore files = new Semaphore(maxOpenFiles);
+        Semaphore coding = new Semaphore(codingThreads);
+        AtomicLong inputBytes = new AtomicLong();
+        AtomicLong outputBytes = new AtomicLong();
+        AtomicLong failures = new AtomicLong();
+
+        ExecutorService virtual = newVirtualThreadExecutor();
+        ExecutorService executor = virtual != null ? virtual : Executors.newFixedThreadPool(codingThreads);
+        long start = System.nanoTime();
+        try {
+            Map<Path, Path> claimed = new HashMap<>();
+            for (Path input : inputs) {
+                Path output = outputPath(outputRoot, input);
+                Path owner = claimed.putIfAbsent(output.toAbsolutePath().normalize(), input);
+                if (owner != null) {
+                    failures.incrementAndGet();
+                    System.err.println("Could not compress " + input + ": " + output + " is already the output for "
+                            + owner);
+                    continue;
+                }
+                executor.execute(() -> {
+                    try {
+                        files.acquire();
+                        try {
+                            if (output.getParent() != null) {
+                                Files.createDirectories(output.getParent());
+                            }
+                            long read;
+                            coding.acquire();
+                            try (InputStream in = Files.newInputStream(input);
+                                 AdaptiveHuffmanOutputStream out = new AdaptiveHuffmanOutputStream(
+                                         new BufferedOutputStream(Files.newOutputStream(output)), options)) {
+                                read = in.transferTo(out);
+                            } finally {
+                                coding.release();
+                            }
+                            inputBytes.addAndGet(read);
+                            outputBytes.addAndGet(Files.size(output));
+                        } finally {
+                            files.release();
+                        }
+                    } catch (InterruptedException e) {
+                        failures.incrementAndGet();
+                        Thread.currentThread().interrupt();
+                    } catch (Throwable e) {
+                        failures.incrementAndGet();
+                        System.err.println("Could not compress " + input + ": " + e);
+                        try {
+                            Files.deleteIfExists(output);
+                        } catch (IOException ignored) {
+                            // already reported the file as failed
+                        }
+                    }
+                });
+            }
+        } finally {
+            executor.shutdown();
+        }
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                // keep waiting; large batches can take a while
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while compressing batch");
+        }
+        return new Summary(inputs.size(), (int) failures.get(), inputBytes.get(), outputBytes.get(),
+                System.nanoTime() - start, virtual != null);
+    }
+
+    // The input's path with its root dropped, under outputRoot, plus SUFFIX.
+    // Leading ".." segments are dropped too, so the output stays inside
+    // outputRoot. That loses information: a/x, ../a/x and ../../a/x are
+    // different files but share one output, and whether an absolute and a
+    // relative input collide depends on the working directory. compress()
+    // reports every input after the first that maps to a taken path.
+    static Path outputPath(Path outputRoot, Path input) {
+        Path relative = input.normalize();
+        if (relative.getRoot() != null) {
+            relative = relative.getRoot().relativize(relative);
+        }
+        while (relative.getNameCount() > 1 && relative.getName(0).toString().equals("..")) {
+            relative = relative.subpath(1, relative.getNameCount());
+        }
+        return outputRoot.resolve(relative.toString() + SUFFIX);
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor() on 21+, null before that
+    // (or on 19/20 without --enable-preview, where the call throws).
+    static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+}
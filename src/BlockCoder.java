@@ -0,0 +1,14 @@
+import java.io.*;
+
+/*
+ * Codes the symbols of one block. Implementations keep their model between
+ * calls, so the same instance must see every block of a stream in order;
+ * reset() returns the model to its initial state on both sides.
+ */
+interface BlockCoder {
+    void encodeBlock(Encoder encoder, byte[] block, int length) throws IOException;
+
+    void decodeBlock(Decoder decoder, byte[] block, int length) throws IOException;
+
+    void reset();
+}
@@ -0,0 +1,44 @@
+import java.io.*;
+
+/*
+ * Splits a non-negative int into a small bucket number, coded through a
+ * tree, and raw extra bits, the way deflate codes lengths and distances.
+ * Values below 4 are their own bucket; larger ones keep their top two bits
+ * in the bucket number, so every int fits in 62 buckets.
+ */
+final class BucketCode {
+    static final int BUCKETS = 62;
+
+    private BucketCode() {
+    }
+
+    static int bucket(int value) {
+        if (value < 4) return value;
+        int bits = 31 - Integer.numberOfLeadingZeros(value);
+        return 2 * bits + ((value >>> (bits - 1)) & 1);
+    }
+
+    static int extraBits(int bucket) {
+        return bucket < 4 ? 0 : bucket / 2 - 1;
+    }
+
+    static int base(int bucket) {
+        return bucket < 4 ? bucket : (2 | (bucket & 1)) << (bucket / 2 - 1);
+    }
+
+    static void writeExtraBits(Encoder encoder, int value) throws IOException {
+        int extra = extraBits(bucket(value));
+        if (extra > 0) {
+            encoder.writeBits(value & ((1 << extra) - 1), extra);
+        }
+    }
+
+    // The value for a bucket already read from the tree.
+    static int read(Decoder decoder, int bucket) throws IOException {
+        if (bucket < 0 || bucket >= BUCKETS) {
+            throw new IOException("Corrupt bucket: " + bucket);
+        }
+        int extra = extraBits(bucket);
+        return base(bucket) + (extra > 0 ? decoder.readBits(extra) : 0);
+    }
+}
@@ -0,0 +1,181 @@
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * Immutable canonical Huffman code with a single-level decode table. Nothing
+ * changes after construction, so one instance can be shared by any number of
+ * encoder and decoder threads.
+ */
+public final class CanonicalCode {
+    public static final int MAX_CODE_LENGTH = 15;
+
+    private final int[] codes;
+    private final int[] lengths;
+    private final int tableBits;
+    private final int[] table;
+
+    private CanonicalCode(int[] lengths) {
+        this.lengths = lengths;
+        this.codes = new int[lengths.length];
+
+        Integer[] order = new Integer[lengths.length];
+        int maxLength = 0;
+        for (int symbol = 0; symbol < lengths.length; symbol++) {
+            order[symbol] = symbol;
+            maxLength = Math.max(maxLength, lengths[symbol]);
+        }
+        Arrays.sort(order, (a, b) -> lengths[a] != lengths[b] ? lengths[a] - lengths[b] : a - b);
+
+        int code = 0;
+        int previousLength = 0;
+        for (int symbol : order) {
+            int length = lengths[symbol];
+            if (length == 0) continue;
+            code <<= length - previousLength;
+            codes[symbol] = code++;
+            previousLength = length;
+        }
+
+        tableBits = Math.max(maxLength, 1);
+        table = new int[1 << tableBits];
+        for (int symbol = 0; symbol < lengths.length; symbol++) {
+            int length = lengths[symbol];
+            if (length == 0) continue;
+            int first = codes[symbol] << (tableBits - length);
+            Arrays.fill(table, first, first + (1 << (tableBits - length)), (symbol << 4) | length);
+        }
+    }
+
+    public static CanonicalCode fromLengths(int[] lengths) {
+        int[] copy = lengths.clone();
+        long kraft = 0;
+        for (int length : copy) {
+            if (length < 0 || length > MAX_CODE_LENGTH) {
+                throw new IllegalArgumentException("Code length out of range: " + length);
+            }
+            if (length > 0) kraft += 1L << (MAX_CODE_LENGTH - length);
+        }
+        if (kraft > 1L << MAX_CODE_LENGTH) {
+            throw new IllegalArgumentException("Code lengths are not a prefix code");
+        }
+        return new CanonicalCode(copy);
+    }
+
+    public static CanonicalCode fromWeights(int[] weights, int maxLength) {
+        return new CanonicalCode(codeLengths(weights, maxLength));
+    }
+
+    // Huffman code lengths for the given weights, limited to maxLength by
+    // halving the weights until the tree is shallow enough. Symbols with
+    // weight 0 get no code.
+    static int[] codeLengths(int[] weights, int maxLength) {
+        long[] scaled = new long[weights.length];
+        for (int i = 0; i < weights.length; i++) {
+            scaled[i] = weights[i];
+        }
+
+        while (true) {
+            int[] lengths = huffmanLengths(scaled);
+            int longest = 0;
+            for (int length : lengths) {
+                longest = Math.max(longest, length);
+            }
+            if (longest <= maxLength) return lengths;
+
+            for (int i = 0; i < scaled.length; i++) {
+                if (scaled[i] > 0) scaled[i] = (scaled[i] + 1) / 2;
+            }
+        }
+    }
+
+    private static int[] huffmanLengths(long[] weights) {
+        int n = weights.length;
+        List<Integer> symbols = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            if (weights[i] > 0) symbols.add(i);
+        }
+        int[] lengths = new int[n];
+        if (symbols.isEmpty()) return lengths;
+        if (symbols.size() == 1) {
+            lengths[symbols.get(0)] = 1;
+            return lengths;
+        }
+        symbols.sort((a, b) -> weights[a] != weights[b] ? Long.compare(weights[a], weights[b]) : a - b);
+
+        // Two-queue merge: nodes 0..n-1 are leaves, n.. are merged nodes.
+        int leafCount = symbols.size();
+        long[] nodeWeights = new long[n + leafCount];
+        int[] parents = new int[n + leafCount];
+        int leafIndex = 0;
+        int mergedStart = n;
+        int mergedEnd = n;
+        for (int remaining = leafCount; remaining > 1; remaining--) {
+            int[] pair = new int[2];
+            for (int k = 0; k < 2; k++) {
+                boolean takeLeaf = mergedStart == mergedEnd
+                        || (leafIndex < leafCount && weights[symbols.get(leafIndex)] <= nodeWeights[mergedStart]);
+                if (takeLeaf) {
+                    int symbol = symbols.get(leafIndex++);
+                    nodeWeights[symbol] = weights[symbol];
+                    pair[k] = symbol;
+                } else {
+                    pair[k] = mergedStart++;
+                }
+            }
+            nodeWeights[mergedEnd] = nodeWeights[pair[0]] + nodeWeights[pair[1]];
+            parents[pair[0]] = mergedEnd;
+            parents[pair[1]] = mergedEnd;
+            mergedEnd++;
+        }
+
+        int root = mergedEnd - 1;
+        int[] depths = new int[n + leafCount];
+        for (int node = root - 1; node >= n; node--) {
+            depths[node] = depths[parents[node]] + 1;
+        }
+        for (int symbol : symbols) {
+            lengths[symbol] = depths[parents[symbol]] + 1;
+        }
+        return lengths;
+    }
+
+    public int getAlphabetSize() {
+        return lengths.length;
+    }
+
+    public int getLength(int symbol) {
+        return lengths[symbol];
+    }
+
+    public int getCode(int symbol) {
+        return codes[symbol];
+    }
+
+    public int getTableBits() {
+        return tableBits;
+    }
+
+    // Packed table entry for the next tableBits bits: symbol << 4 | length.
+    int lookup(int bits) {
+        return table[bits];
+    }
+
+    public void write(Encoder encoder, int symbol) throws IOException {
+        int length = lengths[symbol];
+        if (length == 0) {
+            throw new IllegalArgumentException("Symbol has no code: " + symbol);
+        }
+        encoder.writeBits(codes[symbol], length);
+    }
+
+    public int read(Decoder decoder) throws IOException {
+        int entry = table[decoder.peekBits(tableBits)];
+        if (entry == 0) {
+            throw new IOException("Invalid code in bit stream");
+        }
+        decoder.skipBits(entry & 15);
+        return entry >>> 4;
+    }
+}
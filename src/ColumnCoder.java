@@ -0,0 +1,80 @@
+import java.io.*;
+
+/*
+ * Delimited-text coding with one adaptive tree per column. Each byte is
+ * coded in the tree of the column it belongs to; after a delimiter the
+ * column advances, after '\n' it goes back to 0. Delimiters inside double
+ * quotes don't count. Columns from maxColumns - 1 on share the last tree.
+ * The column and quote state run on across blocks, since blocks end in the
+ * middle of rows, and both sides update them from the bytes alone.
+ */
+class ColumnCoder implements BlockCoder {
+    static final int DEFAULT_MAX_COLUMNS = 32;
+
+    private final int delimiter;
+    private final HuffmanTree[] trees;
+    private final ColumnStatistics statistics;
+    private int column;
+    private boolean quoted;
+
+    ColumnCoder(int delimiter, int maxColumns) {
+        this.delimiter = delimiter;
+        trees = new HuffmanTree[maxColumns];
+        statistics = new ColumnStatistics(maxColumns);
+    }
+
+    ColumnStatistics getStatistics() {
+        return statistics;
+    }
+
+    @Override
+    public void encodeBlock(Encoder encoder, byte[] block, int length) throws IOException {
+        for (int i = 0; i < length; i++) {
+            int symbol = block[i] & 0xFF;
+            int tree = Math.min(column, trees.length - 1);
+            long before = encoder.getBitsWritten();
+            encoder.encodeSymbol(tree(tree), symbol);
+            statistics.record(tree, encoder.getBitsWritten() - before);
+            advance(symbol);
+        }
+    }
+
+    @Override
+    public void decodeBlock(Decoder decoder, byte[] block, int length) throws IOException {
+        for (int i = 0; i < length; i++) {
+            int symbol = decoder.decodeSymbol(tree(Math.min(column, trees.length - 1)));
+            if (symbol == -1) {
+                throw new EOFException("Truncated block");
+            }
+            block[i] = (byte) symbol;
+            advance(symbol);
+        }
+    }
+
+    @Override
+    public void reset() {
+        for (HuffmanTree tree : trees) {
+            if (tree != null) tree.reset();
+        }
+        column = 0;
+        quoted = false;
+    }
+
+    private HuffmanTree tree(int index) {
+        if (trees[index] == null) {
+            trees[index] = new HuffmanTree();
+        }
+        return trees[index];
+    }
+
+    private void advance(int symbol) {
+        if (symbol == '"') {
+            quoted = !quoted;
+        } else if (symbol == '\n') {
+            column = 0;
+            quoted = false;
+        } else if (symbol == delimiter && !quoted && column < trees.length) {
+            column++;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Per-column input bytes and coded size for the COLUMNS mode, as seen by the
+ * encoder. The last column also counts everything past the column cap.
+ */
+public class ColumnStatistics {
+    private final long[] inputBytes;
+    private final long[] codedBits;
+
+    ColumnStatistics(int columns) {
+        inputBytes = new long[columns];
+        codedBits = new long[columns];
+    }
+
+    void record(int column, long bits) {
+        inputBytes[column]++;
+        codedBits[column] += bits;
+    }
+
+    public int getColumnCount() {
+        int count = inputBytes.length;
+        while (count > 0 && inputBytes[count - 1] == 0) {
+            count--;
+        }
+        return count;
+    }
+
+    public long getInputBytes(int column) {
+        return inputBytes[column];
+    }
+
+    public long getCodedBytes(int column) {
+        return (codedBits[column] + 7) / 8;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-8s %12s %12s %8s%n", "column", "input", "coded", "bits/B"));
+        for (int column = 0; column < getColumnCount(); column++) {
+            double bitsPerByte = inputBytes[column] == 0 ? 0 : (double) codedBits[column] / inputBytes[column];
+            String label = column == inputBytes.length - 1 ? column + "+" : String.valueOf(column);
+            sb.append(String.format("%-8s %12d %12d %8.2f%n", label, inputBytes[column],
+                    getCodedBytes(column), bitsPerByte));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,84 @@
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/*
+ * Bounded set of per-context trees with least-recently-used eviction. The
+ * encoder and decoder look contexts up in the same order, so they evict the
+ * same trees, and an evicted context simply starts again from a lone NYT node.
+ *
+ * Trees are recycled rather than dropped: a miss in a full pool takes over
+ * the evicted tree, and clear() keeps its trees as spares for later misses,
+ * so each is reset() instead of allocated again.
+ */
+public class ContextTreePool {
+    private final int capacity;
+    private final LinkedHashMap<Integer, HuffmanTree> trees;
+    private final ArrayDeque<HuffmanTree> spares = new ArrayDeque<>();
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public ContextTreePool(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.trees = new LinkedHashMap<>(capacity * 2, 0.75f, true);
+    }
+
+    public HuffmanTree get(int context) {
+        HuffmanTree tree = trees.get(context);
+        if (tree != null) {
+            hits++;
+            return tree;
+        }
+        misses++;
+        if (trees.size() == capacity) {
+            // Access order: the first entry is the least recently used.
+            Iterator<HuffmanTree> eldest = trees.values().iterator();
+            tree = eldest.next();
+            eldest.remove();
+            evictions++;
+            tree.reset();
+        } else if (!spares.isEmpty()) {
+            tree = spares.pop();
+            tree.reset();
+        } else {
+            tree = new HuffmanTree();
+        }
+        trees.put(context, tree);
+        return tree;
+    }
+
+    public void clear() {
+        spares.addAll(trees.values());
+        trees.clear();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int size() {
+        return trees.size();
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public String toString() {
+        return "ContextTreePool[capacity=" + capacity + ", live=" + trees.size() + ", hits=" + hits
+                + ", misses=" + misses + ", evictions=" + evictions + "]";
+    }
+}
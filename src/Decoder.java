@@ -1,9 +1,12 @@
 import java.io.*;
 
 public class Decoder implements AutoCloseable {
+    public static final int ESCAPE = -2;
+    
     private HuffmanTree tree;
     private BitInputStream input;
     private StringBuilder decodedOutput;
+    private boolean legacyEscapes;
     
     public Decoder(String inputFileName) throws IOException {
         tree = new HuffmanTree();
@@ -17,7 +20,45 @@ public class Decoder implements AutoCloseable {
         decodedOutput = new StringBuilder();
     }
     
+    // Starts over on a new input with an empty default tree, reusing the
+    // tree, its nodes and the bit buffer.
+    public void reset(InputStream in) {
+        input.reset(in);
+        tree.reset();
+        decodedOutput.setLength(0);
+        legacyEscapes = false;
+    }
+    
+    // Same, but the default tree starts as a copy of template.
+    public void reset(InputStream in, HuffmanTree.Template template) {
+        input.reset(in);
+        tree.reset(template);
+        decodedOutput.setLength(0);
+        legacyEscapes = false;
+    }
+    
     public int decodeSymbol() throws IOException {
+        return decodeSymbol(tree);
+    }
+    
+    public int decodeSymbol(HuffmanTree tree) throws IOException {
+        int symbol = readSymbol(tree);
+        if (symbol == -1) return -1;
+        
+        tree.update(symbol);
+        return symbol;
+    }
+    
+    // Reads one symbol coded under the current tree without updating it.
+    public int readSymbol(HuffmanTree tree) throws IOException {
+        int symbol = readSymbolOrEscape(tree);
+        if (symbol != ESCAPE) return symbol;
+        return legacyEscapes ? readASCIIBits(tree) : readNewSymbol(tree);
+    }
+    
+    // Like readSymbol, but returns ESCAPE at the NYT node without reading
+    // the raw symbol bits, for callers that know the new symbol already.
+    public int readSymbolOrEscape(HuffmanTree tree) throws IOException {
         Node currentNode = tree.getRoot();
         
         while (!currentNode.isLeaf() && currentNode != tree.getNYT()) {
@@ -31,21 +72,65 @@ public class Decoder implements AutoCloseable {
             }
         }
         
-        int symbol;
-        if (currentNode == tree.getNYT()) {
-            symbol = readASCIIBits();
-            if (symbol == -1) return -1; 
-        } else {
-            symbol = currentNode.symbol;
+        return currentNode == tree.getNYT() ? ESCAPE : currentNode.symbol;
+    }
+    
+    public int peekBits(int count) throws IOException {
+        return input.peekBits(count);
+    }
+    
+    public void skipBits(int count) throws IOException {
+        input.skipBits(count);
+    }
+    
+    public int readBits(int count) throws IOException {
+        return input.readBits(count);
+    }
+    
+    // Version 1 streams sent new symbols as fixed-width raw bits.
+    public void setLegacyEscapes(boolean legacyEscapes) {
+        this.legacyEscapes = legacyEscapes;
+    }
+    
+    public boolean isLegacyEscapes() {
+        return legacyEscapes;
+    }
+    
+    // See Encoder.writeNewSymbol.
+    private int readNewSymbol(HuffmanTree tree) throws IOException {
+        int group = 0;
+        HuffmanTree groups = tree.getEscapeGroups();
+        if (groups != null) {
+            group = decodeSymbol(groups);
+            if (group == -1) return -1;
         }
-        
-        tree.update(symbol);
-        return symbol;
+        int unseen = tree.unseenMask(group);
+        int count = Integer.bitCount(unseen);
+        if (count == 0) {
+            throw new IOException("Corrupt escape: no unseen symbols in group " + group);
+        }
+        int bits = 31 - Integer.numberOfLeadingZeros(count);
+        int shortCodes = (2 << bits) - count;
+        int index = 0;
+        for (int i = 0; i < bits; i++) {
+            int bit = input.readBit();
+            if (bit == -1) return -1;
+            index = (index << 1) | bit;
+        }
+        if (index >= shortCodes) {
+            int bit = input.readBit();
+            if (bit == -1) return -1;
+            index = ((index << 1) | bit) - shortCodes;
+        }
+        for (; index > 0; index--) {
+            unseen &= unseen - 1;
+        }
+        return group * HuffmanTree.ESCAPE_GROUP_SIZE + Integer.numberOfTrailingZeros(unseen);
     }
     
-    private int readASCIIBits() throws IOException {
+    private int readASCIIBits(HuffmanTree tree) throws IOException {
         int symbol = 0;
-        for (int i = 0; i < 8; i++) {
+        for (int i = 0; i < tree.getSymbolBits(); i++) {
             int bit = input.readBit();
             if (bit == -1) return -1; 
             symbol = (symbol << 1) | bit;
@@ -67,8 +152,9 @@ public class Decoder implements AutoCloseable {
     
     public static class BitInputStream {
         private InputStream in;
-        private int buffer;
+        private long buffer;
         private int bitsLeft;
+        private int paddingBits;
         
         public BitInputStream(InputStream in) {
             this.in = in;
@@ -76,15 +162,61 @@ public class Decoder implements AutoCloseable {
             bitsLeft = 0;
         }
         
+        public void reset(InputStream in) {
+            this.in = in;
+            clear();
+        }
+        
         public int readBit() throws IOException {
-            if (bitsLeft == 0) {
-                buffer = in.read();
-                if (buffer == -1) return -1;
+            if (bitsLeft == paddingBits) {
+                if (paddingBits > 0) return -1;
+                int next = in.read();
+                if (next == -1) return -1;
+                buffer = (buffer << 8) | next;
                 bitsLeft = 8;
             }
             
             bitsLeft--;
-            return (buffer >> bitsLeft) & 1;
+            return (int) (buffer >>> bitsLeft) & 1;
+        }
+        
+        // Returns the next count bits (at most 32) without consuming them.
+        // Past the end of input the missing bits read as zero.
+        public int peekBits(int count) throws IOException {
+            while (bitsLeft < count) {
+                int next = paddingBits > 0 ? -1 : in.read();
+                if (next == -1) {
+                    next = 0;
+                    paddingBits += 8;
+                }
+                buffer = (buffer << 8) | next;
+                bitsLeft += 8;
+            }
+            return (int) ((buffer >>> (bitsLeft - count)) & ((1L << count) - 1));
+        }
+        
+        public void skipBits(int count) throws IOException {
+            if (bitsLeft - count < paddingBits) {
+                throw new EOFException("Unexpected end of bit stream");
+            }
+            bitsLeft -= count;
+        }
+        
+        public int readBits(int count) throws IOException {
+            int bits = peekBits(count);
+            skipBits(count);
+            return bits;
+        }
+        
+        public void alignToByte() {
+            bitsLeft -= bitsLeft % 8;
+        }
+        
+        // Drops everything buffered, e.g. before reading from a new block.
+        public void clear() {
+            buffer = 0;
+            bitsLeft = 0;
+            paddingBits = 0;
         }
         
         public void close() throws IOException {
@@ -92,5 +224,3 @@ public class Decoder implements AutoCloseable {
         }
     }
 }
-
-
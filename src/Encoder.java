@@ -1,8 +1,10 @@
 import java.io.*;
+import java.util.Arrays;
 public class Encoder implements AutoCloseable {
     private HuffmanTree tree;
     private StringBuilder encodedOutput;
     private BitOutputStream output;
+    private int[] path = new int[64];
     
     public Encoder(String outputFileName) throws IOException {
         tree = new HuffmanTree();
@@ -16,23 +18,83 @@ public class Encoder implements AutoCloseable {
         output = outputStream;
     }
     
+    // Starts over on a new output with an empty default tree. The tree, its
+    // nodes and the bit buffer are reused, not reallocated.
+    public void reset(OutputStream out) {
+        output.reset(out);
+        tree.reset();
+        encodedOutput.setLength(0);
+    }
+    
+    // Same, but the default tree starts as a copy of template.
+    public void reset(OutputStream out, HuffmanTree.Template template) {
+        output.reset(out);
+        tree.reset(template);
+        encodedOutput.setLength(0);
+    }
+    
+    // Pads the last partial byte with zeros, leaving the output open.
+    public void finish() throws IOException {
+        output.padToByte();
+    }
+    
     public void encodeSymbol(int symbol) throws IOException {
-        if (tree.contains(symbol)) {
-            String path = tree.getPathToNode(tree.getNode(symbol));
-            writeStringAsPath(path);
+        encodeSymbol(tree, symbol);
+    }
+    
+    public void encodeSymbol(HuffmanTree tree, int symbol) throws IOException {
+        writeSymbol(tree, symbol);
+        tree.update(symbol);
+    }
+    
+    // Writes the code for symbol under the current tree without updating it.
+    public void writeSymbol(HuffmanTree tree, int symbol) throws IOException {
+        Node node = tree.getNode(symbol);
+        if (node != null) {
+            writePath(node);
         } else {
-            String nytPath = tree.getPathToNYT();
-            writeStringAsPath(nytPath);
-            
-            writeASCIIBits(symbol);
+            writePath(tree.getNYT());
+            writeNewSymbol(tree, symbol);
         }
-        
-        tree.update(symbol);
     }
     
-    private void writeASCIIBits(int symbol) throws IOException {
-        for (int i = 7; i >= 0; i--) {
-            output.writeBit((symbol >> i) & 1);
+    // Writes just the NYT code, for callers whose decoder can tell which new
+    // symbol follows without raw bits.
+    public void writeEscape(HuffmanTree tree) throws IOException {
+        writePath(tree.getNYT());
+    }
+    
+    public void writeBits(int bits, int count) throws IOException {
+        output.writeBits(bits, count);
+    }
+    
+    public long getBitsWritten() {
+        return output.getBitsWritten();
+    }
+    
+    // A new symbol is sent as its group of 16 through the tree's escape-group
+    // tree, which learns which ranges new symbols come from (letters, digits,
+    // control bytes...), then as its index among the n symbols of that group
+    // not seen yet, in truncated binary: the first 2^(k+1) - n indexes take
+    // k = floor(log2 n) bits, the rest k + 1.
+    private void writeNewSymbol(HuffmanTree tree, int symbol) throws IOException {
+        if (symbol < 0 || symbol >= tree.getAlphabetSize()) {
+            throw new IllegalArgumentException("Symbol out of range: " + symbol);
+        }
+        int group = symbol / HuffmanTree.ESCAPE_GROUP_SIZE;
+        HuffmanTree groups = tree.getEscapeGroups();
+        if (groups != null) {
+            encodeSymbol(groups, group);
+        }
+        int unseen = tree.unseenMask(group);
+        int index = Integer.bitCount(unseen & ((1 << (symbol % HuffmanTree.ESCAPE_GROUP_SIZE)) - 1));
+        int count = Integer.bitCount(unseen);
+        int bits = 31 - Integer.numberOfLeadingZeros(count);
+        int shortCodes = (2 << bits) - count;
+        if (index < shortCodes) {
+            output.writeBits(index, bits);
+        } else {
+            output.writeBits(index + shortCodes, bits + 1);
         }
     }
     
@@ -42,9 +104,18 @@ public class Encoder implements AutoCloseable {
         }
     }
     
-    private void writeStringAsPath(String path) throws IOException {
-        for (int i = 0; i < path.length(); i++) {
-            output.writeBit(path.charAt(i) == '1' ? 1 : 0);
+    // Collects the branches from node up to the root, then writes them root
+    // first. Same bits as getPathToNode, without building a string.
+    private void writePath(Node node) throws IOException {
+        int depth = 0;
+        for (Node current = node; current.parent != null; current = current.parent) {
+            if (depth == path.length) {
+                path = Arrays.copyOf(path, depth * 2);
+            }
+            path[depth++] = current.parent.rightChild == current ? 1 : 0;
+        }
+        while (depth > 0) {
+            output.writeBit(path[--depth]);
         }
     }
     
@@ -60,6 +131,7 @@ public class Encoder implements AutoCloseable {
         private OutputStream out;
         private int buffer;
         private int bitsInBuffer;
+        private long bitsWritten;
         
         public BitOutputStream(OutputStream out) {
             this.out = out;
@@ -67,9 +139,18 @@ public class Encoder implements AutoCloseable {
             bitsInBuffer = 0;
         }
         
+        // Drops any partial byte and counts from zero again on a new output.
+        public void reset(OutputStream out) {
+            this.out = out;
+            buffer = 0;
+            bitsInBuffer = 0;
+            bitsWritten = 0;
+        }
+        
         public void writeBit(int bit) throws IOException {
             buffer = (buffer << 1) | (bit & 1);
             bitsInBuffer++;
+            bitsWritten++;
             
             if (bitsInBuffer == 8) {
                 out.write(buffer);
@@ -78,11 +159,38 @@ public class Encoder implements AutoCloseable {
             }
         }
         
-        public void close() throws IOException {
+        public void writeBits(int bits, int count) throws IOException {
+            bitsWritten += count;
+            while (count > 0) {
+                int n = Math.min(count, 8 - bitsInBuffer);
+                count -= n;
+                buffer = (buffer << n) | ((bits >>> count) & ((1 << n) - 1));
+                bitsInBuffer += n;
+                
+                if (bitsInBuffer == 8) {
+                    out.write(buffer);
+                    buffer = 0;
+                    bitsInBuffer = 0;
+                }
+            }
+        }
+        
+        // Bits written so far, not counting padding.
+        public long getBitsWritten() {
+            return bitsWritten;
+        }
+        
+        public void padToByte() throws IOException {
             if (bitsInBuffer > 0) {
                 buffer = buffer << (8 - bitsInBuffer);
                 out.write(buffer);
+                buffer = 0;
+                bitsInBuffer = 0;
             }
+        }
+        
+        public void close() throws IOException {
+            padToByte();
             out.close();
         }
     }
@@ -0,0 +1,92 @@
+import java.util.Arrays;
+
+/*
+ * Adaptive symbol counts for the range coder. Counts live in a Fenwick tree,
+ * so both the cumulative count below a symbol and an update cost O(log n).
+ * Every symbol starts with a count of 1, which means there is no escape
+ * symbol. Once the total passes MAX_TOTAL all counts are halved, which keeps
+ * the range coder's precision and lets old statistics fade.
+ */
+public class FrequencyModel {
+    public static final int MAX_TOTAL = 1 << 16;
+    private static final int INCREMENT = 24;
+
+    private final int[] counts;
+    private final int[] tree;
+    private final int topStep;
+    private int total;
+
+    public FrequencyModel(int alphabetSize) {
+        counts = new int[alphabetSize];
+        tree = new int[alphabetSize + 1];
+        topStep = Integer.highestOneBit(alphabetSize);
+        reset();
+    }
+
+    public int getAlphabetSize() {
+        return counts.length;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public int getFrequency(int symbol) {
+        return counts[symbol];
+    }
+
+    // Sum of the counts of all symbols below this one.
+    public int getCumulative(int symbol) {
+        int sum = 0;
+        for (int i = symbol; i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+
+    // The symbol whose range [cumulative, cumulative + frequency) holds target.
+    public int findSymbol(int target) {
+        int position = 0;
+        for (int step = topStep; step > 0; step >>= 1) {
+            int next = position + step;
+            if (next < tree.length && tree[next] <= target) {
+                position = next;
+                target -= tree[next];
+            }
+        }
+        return position;
+    }
+
+    public void update(int symbol) {
+        counts[symbol] += INCREMENT;
+        total += INCREMENT;
+        for (int i = symbol + 1; i < tree.length; i += i & -i) {
+            tree[i] += INCREMENT;
+        }
+        if (total > MAX_TOTAL) {
+            for (int s = 0; s < counts.length; s++) {
+                counts[s] = (counts[s] + 1) / 2;
+            }
+            rebuild();
+        }
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 1);
+        rebuild();
+    }
+
+    private void rebuild() {
+        total = 0;
+        for (int s = 0; s < counts.length; s++) {
+            tree[s + 1] = counts[s];
+            total += counts[s];
+        }
+        for (int i = 1; i < tree.length; i++) {
+            int parent = i + (i & -i);
+            if (parent < tree.length) {
+                tree[parent] += tree[i];
+            }
+        }
+    }
+}
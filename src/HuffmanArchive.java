@@ -0,0 +1,385 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/*
+ * Archive layout:
+ *   ARCHIVE_MAGIC (int)
+ *   member data: one compressed stream per file, back to back
+ *   central directory: entry count (int), then per entry
+ *       name (UTF) | offset (long) | compressed size (long) | original size (long) | CRC32 (int)
+ *   trailer: directory offset (long) | ARCHIVE_MAGIC (int)
+ *
+ * Members are compressed in parallel but written in directory order, so a
+ * finished member waits in a MemberBuffer until the ones before it are out:
+ * in memory up to MEMBER_MEMORY_LIMIT bytes, in a temp file beyond that.
+ * Memory stays bounded by the window of members in flight whatever the
+ * file sizes.
+ */
+public class HuffmanArchive {
+    static final int ARCHIVE_MAGIC = 0x41484152;
+    private static final int TRAILER_SIZE = 12;
+    // An entry with an empty name: UTF length, offset, two sizes and CRC.
+    private static final int MIN_ENTRY_SIZE = 2 + 8 + 8 + 8 + 4;
+    static final int MEMBER_MEMORY_LIMIT = 1 << 20;
+
+    public static class Entry {
+        public final String name;
+        public final long offset;
+        public final long compressedSize;
+        public final long originalSize;
+        public final int crc;
+
+        Entry(String name, long offset, long compressedSize, long originalSize, int crc) {
+            this.name = name;
+            this.offset = offset;
+            this.compressedSize = compressedSize;
+            this.originalSize = originalSize;
+            this.crc = crc;
+        }
+    }
+
+    private static class CompressedMember {
+        final String name;
+        final MemberBuffer data;
+        final long originalSize;
+        final int crc;
+
+        CompressedMember(String name, MemberBuffer data, long originalSize, int crc) {
+            this.name = name;
+            this.data = data;
+            this.originalSize = originalSize;
+            this.crc = crc;
+        }
+    }
+
+    public static List<Entry> pack(String directory, String archiveFileName, int threads) throws IOException {
+        Path root = Paths.get(directory);
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(root)) {
+            files = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Entry> entries = new ArrayList<>();
+        Deque<Future<CompressedMember>> pending = new ArrayDeque<>();
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(archiveFileName)))) {
+            out.writeInt(ARCHIVE_MAGIC);
+            long offset = 4;
+
+            // Keep a bounded window of members in flight so memory stays flat
+            // while the output is still written in directory order.
+            int next = 0;
+            while (next < files.size() || !pending.isEmpty()) {
+                while (next < files.size() && pending.size() < threads * 4) {
+                    Path file = files.get(next++);
+                    String name = root.relativize(file).toString().replace(File.separatorChar, '/');
+                    pending.add(pool.submit(() -> compressMember(name, file)));
+                }
+                CompressedMember member = await(pending.poll());
+                try {
+                    member.data.writeTo(out);
+                } finally {
+                    member.data.discard();
+                }
+                entries.add(new Entry(member.name, offset, member.data.size(), member.originalSize, member.crc));
+                offset += member.data.size();
+            }
+
+            out.writeInt(entries.size());
+            for (Entry entry : entries) {
+                out.writeUTF(entry.name);
+                out.writeLong(entry.offset);
+                out.writeLong(entry.compressedSize);
+                out.writeLong(entry.originalSize);
+                out.writeInt(entry.crc);
+            }
+            out.writeLong(offset);
+            out.writeInt(ARCHIVE_MAGIC);
+        } finally {
+            pool.shutdownNow();
+            if (!pending.isEmpty()) {
+                discardAll(pool, pending);
+            }
+        }
+        return entries;
+    }
+
+    // After a failed pack: waits out the members still being compressed and
+    // deletes the temp files of every one that finished.
+    private static void discardAll(ExecutorService pool, Deque<Future<CompressedMember>> pending) {
+        try {
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Future<CompressedMember> future : pending) {
+            if (future.isDone() && !future.isCancelled()) {
+                try {
+                    future.get().data.discard();
+                } catch (ExecutionException | InterruptedException e) {
+                    // the member failed; it cleaned up after itself
+                }
+            }
+        }
+    }
+
+    public static List<Entry> list(String archiveFileName) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(archiveFileName), StandardOpenOption.READ)) {
+            return readDirectory(channel);
+        }
+    }
+
+    public static void extract(String archiveFileName, String memberName, String outputFileName) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(archiveFileName), StandardOpenOption.READ)) {
+            for (Entry entry : readDirectory(channel)) {
+                if (entry.name.equals(memberName)) {
+                    extractEntry(channel, entry, Paths.get(outputFileName));
+                    return;
+                }
+            }
+        }
+        throw new FileNotFoundException("No such archive member: " + memberName);
+    }
+
+    // Extracts one member to its own path under outputDirectory, with the
+    // same check as extractAll that the name doesn't lead outside it.
+    public static void extractMember(String archiveFileName, String memberName, String outputDirectory)
+            throws IOException {
+        Path target = memberTarget(Paths.get(outputDirectory).toAbsolutePath().normalize(), memberName);
+        extract(archiveFileName, memberName, target.toString());
+    }
+
+    public static void extractAll(String archiveFileName, String outputDirectory, int threads) throws IOException {
+        Path root = Paths.get(outputDirectory).toAbsolutePath().normalize();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try (FileChannel channel = FileChannel.open(Paths.get(archiveFileName), StandardOpenOption.READ)) {
+            List<Future<?>> tasks = new ArrayList<>();
+            for (Entry entry : readDirectory(channel)) {
+                Path target = memberTarget(root, entry.name);
+                tasks.add(pool.submit(() -> {
+                    extractEntry(channel, entry, target);
+                    return null;
+                }));
+            }
+            for (Future<?> task : tasks) {
+                await(task);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static Path memberTarget(Path root, String name) throws IOException {
+        Path target = root.resolve(name).normalize();
+        if (!target.startsWith(root) || target.equals(root)) {
+            throw new IOException("Archive member escapes output directory: " + name);
+        }
+        return target;
+    }
+
+    private static CompressedMember compressMember(String name, Path file) throws IOException {
+        CRC32 crc = new CRC32();
+        long originalSize = 0;
+        MemberBuffer compressed = new MemberBuffer();
+        try (InputStream in = Files.newInputStream(file);
+             AdaptiveHuffmanOutputStream out = new AdaptiveHuffmanOutputStream(compressed)) {
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, n);
+                out.write(buffer, 0, n);
+                originalSize += n;
+            }
+        } catch (IOException | RuntimeException | Error e) {
+            compressed.discard();
+            throw e;
+        }
+        return new CompressedMember(name, compressed, originalSize, (int) crc.getValue());
+    }
+
+    private static List<Entry> readDirectory(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size < 4 + 4 + TRAILER_SIZE) {
+            throw new IOException("Not an adaptive Huffman archive");
+        }
+        ByteBuffer trailer = ByteBuffer.allocate(TRAILER_SIZE);
+        readFully(channel, trailer, size - TRAILER_SIZE);
+        long directoryOffset = trailer.getLong(0);
+        if (trailer.getInt(8) != ARCHIVE_MAGIC || directoryOffset < 4 || directoryOffset > size - TRAILER_SIZE) {
+            throw new IOException("Not an adaptive Huffman archive");
+        }
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new ChannelSliceInputStream(channel, directoryOffset, size - TRAILER_SIZE - directoryOffset)));
+        int count = in.readInt();
+        long directorySize = size - TRAILER_SIZE - directoryOffset - 4;
+        if (count < 0 || count > directorySize / MIN_ENTRY_SIZE) {
+            throw new IOException("Corrupt archive directory: " + count + " entries in " + directorySize + " bytes");
+        }
+        List<Entry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String name;
+            long offset;
+            long compressedSize;
+            long originalSize;
+            int crc;
+            try {
+                name = in.readUTF();
+                offset = in.readLong();
+                compressedSize = in.readLong();
+                originalSize = in.readLong();
+                crc = in.readInt();
+            } catch (EOFException e) {
+                throw new IOException("Corrupt archive directory: ends after " + i + " of " + count + " entries");
+            }
+            if (offset < 4 || compressedSize < 0 || offset + compressedSize > directoryOffset) {
+                throw new IOException("Corrupt archive directory entry: " + name);
+            }
+            entries.add(new Entry(name, offset, compressedSize, originalSize, crc));
+        }
+        return entries;
+    }
+
+    private static void extractEntry(FileChannel channel, Entry entry, Path target) throws IOException {
+        Path parent = target.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+
+        CRC32 crc = new CRC32();
+        long originalSize = 0;
+        try (InputStream in = new AdaptiveHuffmanInputStream(new BufferedInputStream(
+                     new ChannelSliceInputStream(channel, entry.offset, entry.compressedSize)));
+             OutputStream out = Files.newOutputStream(target)) {
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, n);
+                out.write(buffer, 0, n);
+                originalSize += n;
+            }
+        }
+
+        if (originalSize != entry.originalSize || (int) crc.getValue() != entry.crc) {
+            throw new IOException("Checksum mismatch for archive member: " + entry.name);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position + buffer.position());
+            if (n < 0) throw new EOFException("Unexpected end of archive");
+        }
+    }
+
+    private static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while processing archive");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    // A compressed member waiting for its turn in the archive: bytes in
+    // memory until they pass MEMBER_MEMORY_LIMIT, then a temp file.
+    private static class MemberBuffer extends OutputStream {
+        private ByteArrayOutputStream memory = new ByteArrayOutputStream();
+        private Path spill;
+        private OutputStream spillOut;
+        private long size;
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (spill == null && memory.size() + len > MEMBER_MEMORY_LIMIT) {
+                spill = Files.createTempFile("huffman-archive", ".member");
+                spillOut = new BufferedOutputStream(Files.newOutputStream(spill));
+                memory.writeTo(spillOut);
+                memory = null;
+            }
+            if (spill == null) {
+                memory.write(b, off, len);
+            } else {
+                spillOut.write(b, off, len);
+            }
+            size += len;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (spillOut != null) spillOut.close();
+        }
+
+        long size() {
+            return size;
+        }
+
+        void writeTo(OutputStream out) throws IOException {
+            if (spill == null) {
+                memory.writeTo(out);
+            } else {
+                Files.copy(spill, out);
+            }
+        }
+
+        void discard() {
+            memory = null;
+            if (spill != null) {
+                try {
+                    spillOut.close();
+                    Files.deleteIfExists(spill);
+                } catch (IOException e) {
+                    spill.toFile().deleteOnExit();
+                }
+            }
+        }
+    }
+
+    // Positional reads leave the channel position alone, so one channel can
+    // serve several extraction threads at once.
+    private static class ChannelSliceInputStream extends InputStream {
+        private final FileChannel channel;
+        private long position;
+        private long remaining;
+
+        ChannelSliceInputStream(FileChannel channel, long position, long length) {
+            this.channel = channel;
+            this.position = position;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) return -1;
+            int n = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, remaining)), position);
+            if (n < 0) throw new EOFException("Unexpected end of archive");
+            position += n;
+            remaining -= n;
+            return n;
+        }
+    }
+}
@@ -0,0 +1,320 @@
+import java.io.*;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.concurrent.*;
+
+/*
+ * A long-running compression service on a Unix domain socket, so shell
+ * tooling pays for JVM startup and JIT warm-up once instead of per call.
+ *
+ * One request per connection:
+ *   request:  op (1 byte) | payload, up to the client's half-close
+ *   response: frames of length (int) | data, then a 0 length for success,
+ *             or -1 and an error message (writeUTF) for failure
+ * Ops: 'C'/'D' compress/decompress the stream format, 'c'/'d' the
+ * headerless message format from the pooled codecs. Payloads are streamed
+ * both ways for 'C'/'D', so the client has to keep reading while it sends.
+ * 'c'/'d' payloads are held in memory and capped at maxMessageSize bytes;
+ * a larger one, like a request that runs the worker out of memory, gets
+ * the -1 reply and the worker carries on.
+ *
+ * 'C'/'D' are cold on purpose: each request builds its own stream coder,
+ * about 100 KB for compression (mostly the block buffer) and 20 KB for
+ * decompression, next to the 128 KB of socket buffers every connection
+ * has. Pooling them would save only that allocation. A stream always
+ * starts from empty trees, so a reused coder would code no faster. Many
+ * small payloads belong on 'c'/'d', whose pooled codecs allocate nothing
+ * once warm.
+ *
+ * At most `workers` connections are served at once. The accept loop takes a
+ * permit before it accepts, so further clients wait in the listen backlog
+ * until a worker frees up, and a slow reader stalls its own worker through
+ * blocking writes rather than letting output pile up in memory.
+ */
+public class HuffmanDaemon implements Closeable {
+    static final int OP_COMPRESS = 'C';
+    static final int OP_DECOMPRESS = 'D';
+    static final int OP_COMPRESS_MESSAGE = 'c';
+    static final int OP_DECOMPRESS_MESSAGE = 'd';
+    static final int FRAME_SIZE = 64 * 1024;
+    static final int DEFAULT_MAX_MESSAGE_SIZE = 16 * 1024 * 1024;
+
+    private final Path socketPath;
+    private final ServerSocketChannel server;
+    private final ExecutorService workers;
+    private final Semaphore permits;
+    private final int maxMessageSize;
+    private final Thread acceptor;
+    private volatile boolean closed;
+
+    public HuffmanDaemon(Path socketPath, int workerCount) throws IOException {
+        this(socketPath, workerCount, DEFAULT_MAX_MESSAGE_SIZE);
+    }
+
+    public HuffmanDaemon(Path socketPath, int workerCount, int maxMessageSize) throws IOException {
+        if (workerCount < 1) {
+            throw new IllegalArgumentException("Worker count must be at least 1: " + workerCount);
+        }
+        if (maxMessageSize < 0 || maxMessageSize == Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Max message size must be in 0.." + (Integer.MAX_VALUE - 1) + ": "
+                    + maxMessageSize);
+        }
+        this.socketPath = socketPath;
+        this.maxMessageSize = maxMessageSize;
+        removeStaleSocket(socketPath);
+        server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(UnixDomainSocketAddress.of(socketPath));
+        workers = Executors.newFixedThreadPool(workerCount);
+        permits = new Semaphore(workerCount);
+        acceptor = new Thread(this::acceptLoop, "huffman-daemon-accept");
+        acceptor.start();
+    }
+
+    public Path getSocketPath() {
+        return socketPath;
+    }
+
+    public void awaitClose() throws InterruptedException {
+        acceptor.join();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        server.close();
+        acceptor.interrupt();
+        workers.shutdown();
+        try {
+            workers.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Files.deleteIfExists(socketPath);
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            try {
+                permits.acquire();
+                SocketChannel channel;
+                try {
+                    channel = server.accept();
+                } catch (IOException e) {
+                    permits.release();
+                    if (!closed) System.err.println("Accept failed: " + e);
+                    continue;
+                }
+                workers.execute(() -> {
+                    try (SocketChannel client = channel) {
+                        serve(client);
+                    } catch (IOException e) {
+                        // client went away mid-request; nothing left to tell it
+                    } finally {
+                        permits.release();
+                    }
+                });
+            } catch (InterruptedException | RejectedExecutionException e) {
+                return;
+            }
+        }
+    }
+
+    private void serve(SocketChannel channel) throws IOException {
+        InputStream in = new BufferedInputStream(new ChannelInputStream(channel), FRAME_SIZE);
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new ChannelOutputStream(channel), FRAME_SIZE + 4));
+        FrameOutputStream frames = new FrameOutputStream(out);
+        try {
+            int op = in.read();
+            switch (op) {
+                case OP_COMPRESS:
+                    try (AdaptiveHuffmanOutputStream compressor = new AdaptiveHuffmanOutputStream(frames)) {
+                        in.transferTo(compressor);
+                    }
+                    break;
+                case OP_DECOMPRESS:
+                    new AdaptiveHuffmanInputStream(in).transferTo(frames);
+                    break;
+                case OP_COMPRESS_MESSAGE: {
+                    byte[] payload = readPayload(in);
+                    AdaptiveHuffman.compressMessage(payload, 0, payload.length, frames);
+                    break;
+                }
+                case OP_DECOMPRESS_MESSAGE:
+                    frames.write(AdaptiveHuffman.decompressMessage(readPayload(in)));
+                    break;
+                default:
+                    throw new IOException("Unknown request: " + op);
+            }
+            frames.flush();
+            out.writeInt(0);
+        } catch (IOException | RuntimeException e) {
+            out.writeInt(-1);
+            out.writeUTF(String.valueOf(e.getMessage()));
+        } catch (OutOfMemoryError e) {
+            out.writeInt(-1);
+            out.writeUTF("Out of memory: " + e.getMessage());
+        }
+        out.flush();
+    }
+
+    // The rest of the request, refused once it passes maxMessageSize bytes.
+    private byte[] readPayload(InputStream in) throws IOException {
+        byte[] payload = in.readNBytes(maxMessageSize + 1);
+        if (payload.length > maxMessageSize) {
+            throw new IOException("Message payload exceeds " + maxMessageSize + " bytes");
+        }
+        return payload;
+    }
+
+    // Sends one request and copies the response payload to out. Throws with
+    // the daemon's message if the request failed on its side.
+    public static void request(Path socketPath, int op, InputStream payload, OutputStream out) throws IOException {
+        try (SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(socketPath))) {
+            IOException[] sendFailure = new IOException[1];
+            Thread sender = new Thread(() -> {
+                try {
+                    OutputStream request = new BufferedOutputStream(new ChannelOutputStream(channel), FRAME_SIZE);
+                    request.write(op);
+                    payload.transferTo(request);
+                    request.flush();
+                    channel.shutdownOutput();
+                } catch (IOException e) {
+                    sendFailure[0] = e;
+                }
+            }, "huffman-client-send");
+            sender.start();
+
+            DataInputStream response = new DataInputStream(new BufferedInputStream(new ChannelInputStream(channel)));
+            byte[] buffer = new byte[FRAME_SIZE];
+            int length;
+            while ((length = response.readInt()) > 0) {
+                if (length > buffer.length) {
+                    throw new IOException("Corrupt response frame length: " + length);
+                }
+                response.readFully(buffer, 0, length);
+                out.write(buffer, 0, length);
+            }
+            if (length < 0) {
+                throw new IOException("Daemon: " + response.readUTF());
+            }
+            try {
+                sender.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while sending request");
+            }
+            if (sendFailure[0] != null) {
+                throw sendFailure[0];
+            }
+        }
+    }
+
+    // A socket file left behind by a daemon that died is removed; one that
+    // still answers means another daemon owns it.
+    private static void removeStaleSocket(Path socketPath) throws IOException {
+        if (!Files.exists(socketPath)) return;
+        boolean listening;
+        try (SocketChannel probe = SocketChannel.open(UnixDomainSocketAddress.of(socketPath))) {
+            listening = probe.isConnected();
+        } catch (IOException e) {
+            listening = false;
+        }
+        if (listening) {
+            throw new IOException("A daemon is already listening on " + socketPath);
+        }
+        Files.delete(socketPath);
+    }
+
+    // Buffers output and writes it as length-prefixed frames. close() only
+    // flushes, so the response trailer can follow.
+    private static class FrameOutputStream extends OutputStream {
+        private final DataOutputStream out;
+        private final byte[] buffer = new byte[FRAME_SIZE];
+        private int count;
+
+        FrameOutputStream(DataOutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buffer.length) flush();
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (count == buffer.length) flush();
+                int n = Math.min(len, buffer.length - count);
+                System.arraycopy(b, off, buffer, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (count > 0) {
+                out.writeInt(count);
+                out.write(buffer, 0, count);
+                out.flush();
+                count = 0;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+
+    // Plain adapters over a blocking channel. Channels.newInputStream and
+    // newOutputStream lock the channel for each call on some JDKs, which
+    // would stop one thread reading while another writes.
+    private static class ChannelInputStream extends InputStream {
+        private final SocketChannel channel;
+
+        ChannelInputStream(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            return channel.read(ByteBuffer.wrap(b, off, len));
+        }
+    }
+
+    private static class ChannelOutputStream extends OutputStream {
+        private final SocketChannel channel;
+
+        ChannelOutputStream(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+}
@@ -0,0 +1,421 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Compression or decompression as a Flow.Processor, for pipelines that can't
+ * block a thread on a stream. Coding runs on the thread that delivers
+ * onNext and never waits for more input: the compressor hands buffers to an
+ * AdaptiveHuffmanOutputStream, which already gathers small writes into whole
+ * blocks; the decompressor holds input back until a whole block has arrived
+ * (see BlockScanner) and only then lets an AdaptiveHuffmanInputStream read it.
+ *
+ * Output goes out in buffers of bufferSize bytes, the last one possibly
+ * shorter, and only as far as the subscriber has requested. Demand that
+ * reaches Long.MAX_VALUE, in one request or added up, is unbounded and is
+ * never counted down again. Upstream is asked for one more buffer at a
+ * time, and only once the queued output has been taken, so a slow
+ * subscriber holds back the publisher. One input buffer can still expand
+ * into many output buffers when decompressing. A single subscriber is
+ * supported.
+ */
+public class HuffmanFlowProcessor implements Flow.Processor<ByteBuffer, ByteBuffer> {
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private final int bufferSize;
+    private Codec codec;
+    private final ConcurrentLinkedQueue<ByteBuffer> ready = new ConcurrentLinkedQueue<>();
+    private final AtomicLong requested = new AtomicLong();
+    private final AtomicInteger wip = new AtomicInteger();
+    private ByteBuffer current;
+    private volatile Flow.Subscription upstream;
+    private volatile Flow.Subscriber<? super ByteBuffer> downstream;
+    private volatile boolean upstreamPending;
+    private volatile boolean done;
+    private volatile boolean cancelled;
+    private volatile Throwable error;
+
+    private HuffmanFlowProcessor(int bufferSize) {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("Buffer size must be at least 1: " + bufferSize);
+        }
+        this.bufferSize = bufferSize;
+    }
+
+    public static HuffmanFlowProcessor compressor(HuffmanOptions options, int bufferSize) {
+        HuffmanFlowProcessor processor = new HuffmanFlowProcessor(bufferSize);
+        processor.codec = processor.new CompressCodec(options);
+        return processor;
+    }
+
+    public static HuffmanFlowProcessor decompressor(int bufferSize) {
+        HuffmanFlowProcessor processor = new HuffmanFlowProcessor(bufferSize);
+        processor.codec = processor.new DecompressCodec();
+        return processor;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+        Objects.requireNonNull(subscriber);
+        synchronized (this) {
+            if (downstream != null) {
+                subscriber.onSubscribe(new Flow.Subscription() {
+                    public void request(long n) { }
+                    public void cancel() { }
+                });
+                subscriber.onError(new IllegalStateException("Only one subscriber is supported"));
+                return;
+            }
+            downstream = subscriber;
+        }
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                if (n <= 0) {
+                    Flow.Subscription subscription = upstream;
+                    if (subscription != null) subscription.cancel();
+                    fail(new IllegalArgumentException("Non-positive request: " + n));
+                    return;
+                }
+                requested.getAndUpdate(r -> r + n < 0 ? Long.MAX_VALUE : r + n);
+                drain();
+            }
+
+            @Override
+            public void cancel() {
+                cancelled = true;
+                Flow.Subscription subscription = upstream;
+                if (subscription != null) subscription.cancel();
+                ready.clear();
+            }
+        });
+        drain();
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        if (upstream != null) {
+            subscription.cancel();
+            return;
+        }
+        upstream = subscription;
+        drain();
+    }
+
+    @Override
+    public void onNext(ByteBuffer item) {
+        if (done || cancelled) return;
+        try {
+            codec.accept(item);
+        } catch (IOException | RuntimeException e) {
+            upstream.cancel();
+            fail(e);
+            return;
+        }
+        upstreamPending = false;
+        drain();
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        fail(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        if (done || cancelled) return;
+        try {
+            codec.finish();
+            if (current != null && current.position() > 0) {
+                ready.add(current.flip());
+            }
+            current = null;
+        } catch (IOException | RuntimeException e) {
+            fail(e);
+            return;
+        }
+        done = true;
+        drain();
+    }
+
+    private void fail(Throwable throwable) {
+        if (done) return;
+        error = throwable;
+        done = true;
+        ready.clear();
+        drain();
+    }
+
+    // Called from any thread; only one runs the loop at a time, and a call
+    // that arrives meanwhile makes it go round once more.
+    private void drain() {
+        if (wip.getAndIncrement() != 0) return;
+        int missed = 1;
+        do {
+            Flow.Subscriber<? super ByteBuffer> subscriber = downstream;
+            if (subscriber != null && !cancelled) {
+                while (requested.get() > 0 && !ready.isEmpty()) {
+                    subscriber.onNext(ready.poll());
+                    requested.getAndUpdate(r -> r == Long.MAX_VALUE ? r : r - 1);
+                }
+                if (done && ready.isEmpty()) {
+                    cancelled = true;
+                    if (error != null) {
+                        subscriber.onError(error);
+                    } else {
+                        subscriber.onComplete();
+                    }
+                } else if (!done && ready.isEmpty() && requested.get() > 0 && !upstreamPending && upstream != null) {
+                    upstreamPending = true;
+                    upstream.request(1);
+                }
+            }
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void emit(byte[] b, int off, int len) {
+        while (len > 0) {
+            if (current == null) current = ByteBuffer.allocate(bufferSize);
+            int n = Math.min(len, current.remaining());
+            current.put(b, off, n);
+            off += n;
+            len -= n;
+            if (!current.hasRemaining()) {
+                ready.add(current.flip());
+                current = null;
+            }
+        }
+    }
+
+    private interface Codec {
+        void accept(ByteBuffer input) throws IOException;
+
+        void finish() throws IOException;
+    }
+
+    // Output of the coders lands here and is cut into bufferSize pieces.
+    private class EmitStream extends OutputStream {
+        @Override
+        public void write(int b) {
+            emit(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            emit(b, off, len);
+        }
+    }
+
+    private class CompressCodec implements Codec {
+        private final AdaptiveHuffmanOutputStream out;
+        private final byte[] copy = new byte[8192];
+
+        CompressCodec(HuffmanOptions options) {
+            out = new AdaptiveHuffmanOutputStream(new EmitStream(), options);
+        }
+
+        @Override
+        public void accept(ByteBuffer input) throws IOException {
+            if (input.hasArray()) {
+                out.write(input.array(), input.arrayOffset() + input.position(), input.remaining());
+                input.position(input.limit());
+                return;
+            }
+            while (input.hasRemaining()) {
+                int n = Math.min(copy.length, input.remaining());
+                input.get(copy, 0, n);
+                out.write(copy, 0, n);
+            }
+        }
+
+        @Override
+        public void finish() throws IOException {
+            out.close();
+        }
+    }
+
+    private class DecompressCodec implements Codec {
+        private final BlockScanner scanner = new BlockScanner();
+        private final AdaptiveHuffmanInputStream in = new AdaptiveHuffmanInputStream(scanner);
+        private final byte[] decoded = new byte[8192];
+
+        @Override
+        public void accept(ByteBuffer input) throws IOException {
+            scanner.append(input);
+            pump();
+        }
+
+        @Override
+        public void finish() throws IOException {
+            scanner.releaseAll();
+            pump();
+            if (in.read() != -1) {
+                throw new IOException("Trailing data after end of stream");
+            }
+        }
+
+        // Reads only while a whole block is waiting or decoded bytes are
+        // left, so the input stream never asks for bytes that haven't come.
+        private void pump() throws IOException {
+            while (in.available() > 0 || scanner.available() > 0) {
+                int n = in.read(decoded, 0, decoded.length);
+                if (n == -1) return;
+                emit(decoded, 0, n);
+            }
+        }
+    }
+
+    /*
+     * Buffers compressed input and releases it to the input stream only up
+     * to the end of the last complete data block, by walking the member
+     * headers and block headers of the stream format. The end of a member
+     * and the next member's header are held back until the next data block
+     * (or the end of input) has arrived too, since the input stream reads
+     * straight on past them.
+     */
+    private static class BlockScanner extends InputStream {
+        private byte[] buffer = new byte[8192];
+        private int readPos;
+        private int released;
+        private int scanPos;
+        private int end;
+        private boolean expectHeader = true;
+        private int version;
+        private int varintEnd;
+
+        void append(ByteBuffer input) throws IOException {
+            int length = input.remaining();
+            if (end + length > buffer.length) {
+                System.arraycopy(buffer, readPos, buffer, 0, end - readPos);
+                released -= readPos;
+                scanPos -= readPos;
+                end -= readPos;
+                readPos = 0;
+                if (end + length > buffer.length) {
+                    buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, end + length));
+                }
+            }
+            input.get(buffer, end, length);
+            end += length;
+            scan();
+        }
+
+        void releaseAll() {
+            released = end;
+        }
+
+        private void scan() throws IOException {
+            while (true) {
+                if (expectHeader) {
+                    long headerEnd = headerEnd();
+                    if (headerEnd < 0) return;
+                    scanPos = (int) headerEnd;
+                    expectHeader = false;
+                }
+                if (end - scanPos < 1) return;
+                int type = buffer[scanPos] & 0xFF;
+                if (type == AdaptiveHuffmanOutputStream.BLOCK_END) {
+                    scanPos++;
+                    expectHeader = true;
+                    continue;
+                }
+                long blockEnd = version >= 3 ? varintBlockEnd(type) : intBlockEnd();
+                if (blockEnd < 0) return;
+                scanPos = (int) blockEnd;
+                released = scanPos;
+            }
+        }
+
+        // End of the member header at scanPos: magic, version, option count
+        // and tag/value pairs. -1 if it hasn't all arrived.
+        private long headerEnd() throws IOException {
+            if (end - scanPos < 4) return -1;
+            version = buffer[scanPos + 2] & 0xFF;
+            int count = buffer[scanPos + 3] & 0xFF;
+            if (version < 3) {
+                long headerEnd = scanPos + 4L + 5L * count;
+                return headerEnd <= end ? headerEnd : -1;
+            }
+            int at = scanPos + 4;
+            for (int i = 0; i < count; i++) {
+                if (readVarint(at + 1) < 0) return -1;
+                at = varintEnd;
+            }
+            return at;
+        }
+
+        // End of the block at scanPos, or -1 if it hasn't all arrived.
+        private long intBlockEnd() throws IOException {
+            if (end - scanPos < 9) return -1;
+            int codedLength = readInt(scanPos + 5);
+            if (codedLength < 0) {
+                throw new IOException("Corrupt block header");
+            }
+            long blockEnd = scanPos + 9L + codedLength;
+            return blockEnd <= end ? blockEnd : -1;
+        }
+
+        private long varintBlockEnd(int type) throws IOException {
+            int at = scanPos + 1;
+            long raw = readVarint(at);
+            if (raw < 0) return -1;
+            at = varintEnd;
+            long coded = raw + 1;
+            if (type != AdaptiveHuffmanOutputStream.BLOCK_STORED) {
+                coded = readVarint(at);
+                if (coded < 0) return -1;
+                at = varintEnd;
+            }
+            long blockEnd = at + coded;
+            return blockEnd <= end ? blockEnd : -1;
+        }
+
+        // The varint at position at, or -1 if it hasn't all arrived. Sets
+        // varintEnd to the position after it.
+        private long readVarint(int at) throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 7 * Varint.MAX_BYTES; shift += 7) {
+                if (at >= end) return -1;
+                int b = buffer[at++] & 0xFF;
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    if (value < 0) break;
+                    varintEnd = at;
+                    return value;
+                }
+            }
+            throw new IOException("Corrupt block header");
+        }
+
+        private int readInt(int at) {
+            return ((buffer[at] & 0xFF) << 24) | ((buffer[at + 1] & 0xFF) << 16)
+                    | ((buffer[at + 2] & 0xFF) << 8) | (buffer[at + 3] & 0xFF);
+        }
+
+        @Override
+        public int available() {
+            return released - readPos;
+        }
+
+        @Override
+        public int read() {
+            return readPos < released ? buffer[readPos++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) return 0;
+            if (readPos >= released) return -1;
+            int n = Math.min(len, released - readPos);
+            System.arraycopy(buffer, readPos, b, off, n);
+            readPos += n;
+            return n;
+        }
+    }
+}
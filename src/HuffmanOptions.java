@@ -0,0 +1,353 @@
+import java.io.*;
+
+/*
+ * Settings for AdaptiveHuffmanOutputStream. Everything the decoder needs to
+ * rebuild the same models is written into the stream header as tag/value
+ * pairs, so AdaptiveHuffmanInputStream never takes options of its own.
+ */
+public class HuffmanOptions {
+    public enum Mode {
+        ORDER0,
+        ORDER1,
+        AUTO,
+        SEMI_ADAPTIVE,
+        STATIC,
+        RANGE,
+        LZ77,
+        BWT,
+        RLE,
+        NIBBLE,
+        INTERLEAVED,
+        WORD,
+        COLUMNS
+    }
+
+    public enum Transform {
+        NONE,
+        DELTA,
+        XOR,
+        SHUFFLE
+    }
+
+    public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+    // Also the largest block length a decoder accepts from a stream.
+    public static final int MAX_BLOCK_SIZE = 64 * 1024 * 1024;
+    public static final int DEFAULT_CONTEXT_POOL_SIZE = 64;
+    public static final int DEFAULT_FREEZE_AFTER = 4096;
+
+    private static final int TAG_CONTEXT_POOL_SIZE = 1;
+    private static final int TAG_BATCH_SIZE = 2;
+    private static final int TAG_BATCH_THRESHOLD = 3;
+    private static final int TAG_FREEZE_AFTER = 4;
+    private static final int TAG_REFREEZE = 5;
+    private static final int TAG_LZ_LEVEL = 6;
+    private static final int TAG_RUN_THRESHOLD = 7;
+    private static final int TAG_STREAMS = 8;
+    private static final int TAG_TRANSFORM = 9;
+    private static final int TAG_TRANSFORM_WIDTH = 10;
+    private static final int TAG_DELIMITER = 11;
+    private static final int TAG_MAX_COLUMNS = 12;
+
+    private int blockSize = DEFAULT_BLOCK_SIZE;
+    private Mode mode = Mode.ORDER0;
+    private int contextPoolSize = DEFAULT_CONTEXT_POOL_SIZE;
+    private int sampleSize = ModelSelector.DEFAULT_SAMPLE_SIZE;
+    private int batchSize = 1;
+    private int batchThreshold;
+    private int freezeAfter = DEFAULT_FREEZE_AFTER;
+    private boolean refreeze;
+    private int lzLevel = LZ77Coder.DEFAULT_LEVEL;
+    private int runThreshold = RunLengthCoder.DEFAULT_THRESHOLD;
+    private int streams = InterleavedCoder.DEFAULT_STREAMS;
+    private Transform transform = Transform.NONE;
+    private int transformWidth = 1;
+    private int delimiter = ',';
+    private int maxColumns = ColumnCoder.DEFAULT_MAX_COLUMNS;
+
+    private static final int[] DEFAULT_HEADER_VALUES = new HuffmanOptions().headerValues();
+
+    public HuffmanOptions blockSize(int blockSize) {
+        if (blockSize <= 0 || blockSize > MAX_BLOCK_SIZE) {
+            throw new IllegalArgumentException("Block size must be in 1.." + MAX_BLOCK_SIZE + ": " + blockSize);
+        }
+        this.blockSize = blockSize;
+        return this;
+    }
+
+    public HuffmanOptions mode(Mode mode) {
+        if (mode == null) {
+            throw new IllegalArgumentException("Mode must not be null");
+        }
+        this.mode = mode;
+        return this;
+    }
+
+    public HuffmanOptions contextPoolSize(int contextPoolSize) {
+        if (contextPoolSize <= 0 || contextPoolSize > 256) {
+            throw new IllegalArgumentException("Context pool size must be in 1..256: " + contextPoolSize);
+        }
+        this.contextPoolSize = contextPoolSize;
+        return this;
+    }
+
+    public HuffmanOptions sampleSize(int sampleSize) {
+        if (sampleSize <= 0) {
+            throw new IllegalArgumentException("Sample size must be positive: " + sampleSize);
+        }
+        this.sampleSize = sampleSize;
+        return this;
+    }
+
+    // 1 keeps exact FGK updates; larger values apply weight increments to the
+    // order-0 tree in batches. A threshold of 0 means "same as batch size".
+    public HuffmanOptions batchSize(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    public HuffmanOptions batchThreshold(int batchThreshold) {
+        if (batchThreshold < 0) {
+            throw new IllegalArgumentException("Batch threshold must not be negative: " + batchThreshold);
+        }
+        this.batchThreshold = batchThreshold;
+        return this;
+    }
+
+    // SEMI_ADAPTIVE: number of symbols coded adaptively before the tree is
+    // frozen into canonical codes, and whether to re-freeze at each block.
+    public HuffmanOptions freezeAfter(int freezeAfter) {
+        if (freezeAfter <= 0) {
+            throw new IllegalArgumentException("Freeze point must be positive: " + freezeAfter);
+        }
+        this.freezeAfter = freezeAfter;
+        return this;
+    }
+
+    public HuffmanOptions refreeze(boolean refreeze) {
+        this.refreeze = refreeze;
+        return this;
+    }
+
+    // LZ77: match finder effort, 1 (fastest) to 9 (best ratio).
+    public HuffmanOptions lzLevel(int lzLevel) {
+        if (lzLevel < 1 || lzLevel > 9) {
+            throw new IllegalArgumentException("LZ77 level must be in 1..9: " + lzLevel);
+        }
+        this.lzLevel = lzLevel;
+        return this;
+    }
+
+    // RLE: identical bytes in a row before a run length token is coded.
+    public HuffmanOptions runThreshold(int runThreshold) {
+        if (runThreshold < 2 || runThreshold > 255) {
+            throw new IllegalArgumentException("Run threshold must be in 2..255: " + runThreshold);
+        }
+        this.runThreshold = runThreshold;
+        return this;
+    }
+
+    // INTERLEAVED: independent trees and bit streams per block.
+    public HuffmanOptions streams(int streams) {
+        if (streams < 1 || streams > InterleavedCoder.MAX_STREAMS) {
+            throw new IllegalArgumentException("Stream count must be in 1.." + InterleavedCoder.MAX_STREAMS + ": " + streams);
+        }
+        this.streams = streams;
+        return this;
+    }
+
+    // Record transform applied to every block before coding. DELTA takes
+    // integer widths of 1, 2, 4 or 8 bytes; XOR and SHUFFLE take any word or
+    // record width up to 255.
+    public HuffmanOptions transform(Transform transform, int width) {
+        if (transform == null) {
+            throw new IllegalArgumentException("Transform must not be null");
+        }
+        boolean valid = transform == Transform.DELTA
+                ? width == 1 || width == 2 || width == 4 || width == 8
+                : width >= 1 && width <= 255;
+        if (!valid) {
+            throw new IllegalArgumentException("Unsupported width for " + transform + ": " + width);
+        }
+        this.transform = transform;
+        this.transformWidth = width;
+        return this;
+    }
+
+    // COLUMNS: field delimiter (',' for CSV, '\t' for TSV) and the number of
+    // per-column trees; later columns share the last one.
+    public HuffmanOptions delimiter(int delimiter) {
+        if (delimiter < 0 || delimiter > 255 || delimiter == '\n' || delimiter == '"') {
+            throw new IllegalArgumentException("Unsupported delimiter: " + delimiter);
+        }
+        this.delimiter = delimiter;
+        return this;
+    }
+
+    public HuffmanOptions maxColumns(int maxColumns) {
+        if (maxColumns < 1 || maxColumns > 256) {
+            throw new IllegalArgumentException("Column cap must be in 1..256: " + maxColumns);
+        }
+        this.maxColumns = maxColumns;
+        return this;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public int getContextPoolSize() {
+        return contextPoolSize;
+    }
+
+    public int getSampleSize() {
+        return sampleSize;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public int getBatchThreshold() {
+        return batchThreshold == 0 ? batchSize : batchThreshold;
+    }
+
+    public int getFreezeAfter() {
+        return freezeAfter;
+    }
+
+    public boolean isRefreeze() {
+        return refreeze;
+    }
+
+    public int getLzLevel() {
+        return lzLevel;
+    }
+
+    public int getRunThreshold() {
+        return runThreshold;
+    }
+
+    public int getStreams() {
+        return streams;
+    }
+
+    public Transform getTransform() {
+        return transform;
+    }
+
+    public int getTransformWidth() {
+        return transformWidth;
+    }
+
+    public int getDelimiter() {
+        return delimiter;
+    }
+
+    public int getMaxColumns() {
+        return maxColumns;
+    }
+
+    // Only settings that differ from a new HuffmanOptions are written, as
+    // varints, so a default header is a single zero count byte. Readers
+    // start from the defaults, which therefore must never change.
+    void writeHeader(DataOutputStream out) throws IOException {
+        int[] values = headerValues();
+        int count = 0;
+        for (int tag = 1; tag < values.length; tag++) {
+            if (values[tag] != DEFAULT_HEADER_VALUES[tag]) count++;
+        }
+        out.writeByte(count);
+        for (int tag = 1; tag < values.length; tag++) {
+            if (values[tag] != DEFAULT_HEADER_VALUES[tag]) {
+                out.writeByte(tag);
+                Varint.write(out, values[tag]);
+            }
+        }
+    }
+
+    // Header settings indexed by tag.
+    private int[] headerValues() {
+        int[] values = new int[TAG_MAX_COLUMNS + 1];
+        values[TAG_CONTEXT_POOL_SIZE] = contextPoolSize;
+        values[TAG_BATCH_SIZE] = batchSize;
+        values[TAG_BATCH_THRESHOLD] = batchThreshold;
+        values[TAG_FREEZE_AFTER] = freezeAfter;
+        values[TAG_REFREEZE] = refreeze ? 1 : 0;
+        values[TAG_LZ_LEVEL] = lzLevel;
+        values[TAG_RUN_THRESHOLD] = runThreshold;
+        values[TAG_STREAMS] = streams;
+        values[TAG_TRANSFORM] = transform.ordinal();
+        values[TAG_TRANSFORM_WIDTH] = transformWidth;
+        values[TAG_DELIMITER] = delimiter;
+        values[TAG_MAX_COLUMNS] = maxColumns;
+        return values;
+    }
+
+    // Before stream version 3 every tag was written, with a 4-byte value.
+    static HuffmanOptions readHeader(DataInputStream in, int version) throws IOException {
+        HuffmanOptions options = new HuffmanOptions();
+        int count = in.readUnsignedByte();
+        Transform transform = Transform.NONE;
+        int transformWidth = 1;
+        try {
+            for (int i = 0; i < count; i++) {
+                int tag = in.readUnsignedByte();
+                int value = version >= 3 ? Varint.read(in) : in.readInt();
+                switch (tag) {
+                    case TAG_CONTEXT_POOL_SIZE:
+                        options.contextPoolSize(value);
+                        break;
+                    case TAG_BATCH_SIZE:
+                        options.batchSize(value);
+                        break;
+                    case TAG_BATCH_THRESHOLD:
+                        options.batchThreshold(value);
+                        break;
+                    case TAG_FREEZE_AFTER:
+                        options.freezeAfter(value);
+                        break;
+                    case TAG_REFREEZE:
+                        options.refreeze(value != 0);
+                        break;
+                    case TAG_LZ_LEVEL:
+                        options.lzLevel(value);
+                        break;
+                    case TAG_RUN_THRESHOLD:
+                        options.runThreshold(value);
+                        break;
+                    case TAG_STREAMS:
+                        options.streams(value);
+                        break;
+                    case TAG_TRANSFORM:
+                        if (value < 0 || value >= Transform.values().length) {
+                            throw new IOException("Unknown transform: " + value);
+                        }
+                        transform = Transform.values()[value];
+                        break;
+                    case TAG_TRANSFORM_WIDTH:
+                        transformWidth = value;
+                        break;
+                    case TAG_DELIMITER:
+                        options.delimiter(value);
+                        break;
+                    case TAG_MAX_COLUMNS:
+                        options.maxColumns(value);
+                        break;
+                    default:
+                        throw new IOException("Unsupported stream option: " + tag);
+                }
+            }
+            options.transform(transform, transformWidth);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Corrupt stream header: " + e.getMessage());
+        }
+        return options;
+    }
+}
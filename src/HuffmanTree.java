@@ -1,22 +1,151 @@
-import java.util.HashMap;
-import java.util.Map;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.List;
 
 public class HuffmanTree {
+    public static final int MAX_ALPHABET_SIZE = 1 << 16;
+    public static final int ESCAPE_GROUP_SIZE = 16;
+    // Leaf order for rebuild: by weight, ties to the lower symbol.
+    private static final Comparator<Node> LEAF_ORDER = (a, b) -> a.weight != b.weight
+            ? Integer.compare(a.weight, b.weight) : Integer.compare(a.symbol, b.symbol);
+    // Trees using more order numbers than this look up swap candidates in
+    // the leader index below instead of walking every node.
+    private static final int INDEX_MIN_POSITIONS = 1024;
+    
     private Node root;
     private Node NYT; 
+    private final int maxOrderNumber;
+    private final int alphabetSize;
+    private final int symbolBits;
+    private final long[] seen;
+    private HuffmanTree escapeGroups;
     private int nextOrderNumber;
-    private Map<Integer, Node> symbolToNode;
+    private final Node[] symbolNodes;
     private List<Node> nodeSwaps;
+    // Every node addNewSymbol has handed out; reset() recycles them.
+    private Node[] nodes = new Node[16];
+    private int nodeCount;
+    // Leader index: the live node at each position maxOrderNumber - orderNumber,
+    // and a segment tree of the least and greatest weight under each range of
+    // positions. indexSize is 0 while the tree is small enough to walk.
+    private Node[] indexed;
+    private int[] indexMin;
+    private int[] indexMax;
+    private int indexSize;
     
     public HuffmanTree() {
-        nextOrderNumber = 512; 
-        symbolToNode = new HashMap<>();
+        this(256);
+    }
+    
+    // A tree over symbols 0..alphabetSize-1. New symbols are sent after the
+    // NYT code as their group, through a small adaptive tree of its own, and
+    // then their index among the unseen symbols of that group.
+    public HuffmanTree(int alphabetSize) {
+        if (alphabetSize < 2 || alphabetSize > MAX_ALPHABET_SIZE) {
+            throw new IllegalArgumentException("Alphabet size must be in 2.." + MAX_ALPHABET_SIZE + ": " + alphabetSize);
+        }
+        this.alphabetSize = alphabetSize;
+        maxOrderNumber = 2 * alphabetSize;
+        symbolBits = 32 - Integer.numberOfLeadingZeros(alphabetSize - 1);
+        seen = new long[(alphabetSize + 63) >>> 6];
+        nextOrderNumber = maxOrderNumber; 
+        symbolNodes = new Node[alphabetSize];
         nodeSwaps = new ArrayList<>();
         
-        NYT = new Node(0, -1, nextOrderNumber--);
+        NYT = newNode(-1, nextOrderNumber--);
+        root = NYT;
+    }
+    
+    // Back to the empty tree, reusing the nodes and arrays allocated so far,
+    // so a tree can serve one message after another without garbage.
+    public void reset() {
+        clearSymbols();
+        nodeSwaps.clear();
+        nodeCount = 0;
+        indexSize = 0;
+        nextOrderNumber = maxOrderNumber;
+        NYT = newNode(-1, nextOrderNumber--);
         root = NYT;
+        if (escapeGroups != null) {
+            escapeGroups.reset();
+        }
+    }
+    
+    // Back to the state captured by template, copied node by node from its
+    // flat arrays into this tree's pooled nodes. Nothing is allocated once
+    // the pool has grown to the template's size.
+    public void reset(Template template) {
+        if (template.alphabetSize != alphabetSize) {
+            throw new IllegalArgumentException("Template is for an alphabet of " + template.alphabetSize
+                    + " symbols, not " + alphabetSize);
+        }
+        clearSymbols();
+        nodeSwaps.clear();
+        int count = template.count;
+        if (nodes.length < count) {
+            nodes = Arrays.copyOf(nodes, Math.max(count, nodes.length * 2));
+        }
+        for (int i = nodeCount; i < count; i++) {
+            if (nodes[i] == null) nodes[i] = new Node(0, 0);
+        }
+        int[] flat = template.nodes;
+        for (int i = 0, f = 0; i < count; i++, f += Template.STRIDE) {
+            Node node = nodes[i];
+            node.symbol = flat[f];
+            node.weight = flat[f + 1];
+            node.orderNumber = flat[f + 2];
+            node.parent = flat[f + 3] < 0 ? null : nodes[flat[f + 3]];
+            node.leftChild = flat[f + 4] < 0 ? null : nodes[flat[f + 4]];
+            node.rightChild = flat[f + 5] < 0 ? null : nodes[flat[f + 5]];
+            if (node.symbol >= 0) symbolNodes[node.symbol] = node;
+        }
+        System.arraycopy(template.seen, 0, seen, 0, seen.length);
+        nodeCount = count;
+        root = nodes[0];
+        NYT = nodes[template.nyt];
+        nextOrderNumber = template.nextOrderNumber;
+        buildIndex();
+        if (template.escapeGroups != null) {
+            getEscapeGroups().reset(template.escapeGroups);
+        } else if (escapeGroups != null) {
+            escapeGroups.reset();
+        }
+    }
+    
+    // Captures the current tree, escape groups included, for reset(Template).
+    public Template snapshot() {
+        return new Template(this);
+    }
+    
+    private void clearSymbols() {
+        for (int w = 0; w < seen.length; w++) {
+            for (long bits = seen[w]; bits != 0; bits &= bits - 1) {
+                symbolNodes[(w << 6) + Long.numberOfTrailingZeros(bits)] = null;
+            }
+            seen[w] = 0;
+        }
+    }
+    
+    private Node newNode(int symbol, int orderNumber) {
+        if (nodeCount == nodes.length) {
+            nodes = Arrays.copyOf(nodes, nodes.length * 2);
+        }
+        Node node = nodes[nodeCount];
+        if (node == null) {
+            node = new Node(0, symbol, orderNumber);
+            nodes[nodeCount] = node;
+        } else {
+            node.weight = 0;
+            node.symbol = symbol;
+            node.orderNumber = orderNumber;
+            node.parent = null;
+            node.leftChild = null;
+            node.rightChild = null;
+        }
+        nodeCount++;
+        return node;
     }
     
     public Node getRoot() {
@@ -27,6 +156,35 @@ public class HuffmanTree {
         return NYT;
     }
     
+    public int getSymbolBits() {
+        return symbolBits;
+    }
+    
+    public int getAlphabetSize() {
+        return alphabetSize;
+    }
+    
+    // Tree over the groups of ESCAPE_GROUP_SIZE symbols that new symbols come
+    // from, created on the first escape; null when the whole alphabet fits in
+    // one group.
+    public HuffmanTree getEscapeGroups() {
+        if (escapeGroups == null && alphabetSize > ESCAPE_GROUP_SIZE) {
+            escapeGroups = new HuffmanTree((alphabetSize + ESCAPE_GROUP_SIZE - 1) / ESCAPE_GROUP_SIZE);
+        }
+        return escapeGroups;
+    }
+    
+    // Bit i is set if symbol group * ESCAPE_GROUP_SIZE + i has not been seen.
+    public int unseenMask(int group) {
+        int first = group * ESCAPE_GROUP_SIZE;
+        if (group < 0 || first >= alphabetSize) {
+            throw new IllegalArgumentException("Escape group out of range: " + group);
+        }
+        int mask = ~(int) (seen[first >>> 6] >>> (first & 63)) & ((1 << ESCAPE_GROUP_SIZE) - 1);
+        int size = Math.min(ESCAPE_GROUP_SIZE, alphabetSize - first);
+        return mask & ((1 << size) - 1);
+    }
+    
     public List<Node> getNodeSwaps() {
         return nodeSwaps;
     }
@@ -36,11 +194,11 @@ public class HuffmanTree {
     }
     
     public boolean contains(int symbol) {
-        return symbolToNode.containsKey(symbol);
+        return getNode(symbol) != null;
     }
     
     public Node getNode(int symbol) {
-        return symbolToNode.get(symbol);
+        return symbol >= 0 && symbol < alphabetSize ? symbolNodes[symbol] : null;
     }
     
     public void update(int symbol) {
@@ -56,11 +214,11 @@ public class HuffmanTree {
     private void addNewSymbol(int symbol) {
         Node oldNYT = NYT;
         
-        Node internalNode = new Node(0, nextOrderNumber--);
+        Node internalNode = newNode(-1, nextOrderNumber--);
         
-        Node symbolNode = new Node(0, symbol, nextOrderNumber--);
+        Node symbolNode = newNode(symbol, nextOrderNumber--);
         
-        Node newNYT = new Node(0, -1, nextOrderNumber--);
+        Node newNYT = newNode(-1, nextOrderNumber--);
         
         internalNode.leftChild = newNYT;
         internalNode.rightChild = symbolNode;
@@ -81,28 +239,47 @@ public class HuffmanTree {
         
         NYT = newNYT;
         
-        symbolToNode.put(symbol, symbolNode);
+        symbolNodes[symbol] = symbolNode;
+        seen[symbol >>> 6] |= 1L << symbol;
+        
+        if (indexSize > 0 && maxOrderNumber - nextOrderNumber <= indexSize) {
+            setIndex(oldNYT.orderNumber, null);
+            setIndex(internalNode.orderNumber, internalNode);
+            setIndex(symbolNode.orderNumber, symbolNode);
+            setIndex(newNYT.orderNumber, newNYT);
+        } else {
+            buildIndex();
+        }
         
         incrementWeight(symbolNode);
     }
     
     private void updateExistingSymbol(int symbol) {
-        Node node = symbolToNode.get(symbol);
+        Node node = symbolNodes[symbol];
         
         incrementWeight(node);
     }
     
     private void incrementWeight(Node node) {
-        Node highestNode = findHighestNodeWithSameWeight(node);
+        Node highestNode = indexSize > 0
+                ? findLeader(1, 0, indexSize, node, maxOrderNumber - node.orderNumber)
+                : findHighestNodeWithSameWeight(node);
         
         if (highestNode != null && highestNode != node && !isAncestor(node, highestNode)) {
             nodeSwaps.add(node);
             nodeSwaps.add(highestNode);
             
             swapNodes(node, highestNode);
+            if (indexSize > 0) {
+                indexed[maxOrderNumber - node.orderNumber] = node;
+                indexed[maxOrderNumber - highestNode.orderNumber] = highestNode;
+            }
         }
         
         node.weight++;
+        if (indexSize > 0) {
+            setIndex(node.orderNumber, node);
+        }
 
         if (node.parent != null) {
             incrementWeight(node.parent);
@@ -143,6 +320,67 @@ public class HuffmanTree {
         return result;
     }
     
+    // Same answer as findHighestNodeWithSameWeight, from the index: the first
+    // position below limit (the highest order number above node's) holding
+    // a node of node's weight that is neither the root nor node's sibling.
+    // Subtrees whose weight range misses node's are skipped whole.
+    private Node findLeader(int i, int from, int to, Node node, int limit) {
+        if (from >= limit || indexMin[i] > node.weight || indexMax[i] < node.weight) {
+            return null;
+        }
+        if (i >= indexSize) {
+            Node candidate = indexed[from];
+            return candidate != root && !areSiblings(candidate, node) ? candidate : null;
+        }
+        int middle = (from + to) >>> 1;
+        Node leader = findLeader(2 * i, from, middle, node, limit);
+        return leader != null ? leader : findLeader(2 * i + 1, middle, to, node, limit);
+    }
+    
+    // Indexes the tree from scratch once it uses more than INDEX_MIN_POSITIONS
+    // order numbers, with room for as many again; arrays are kept across
+    // reset() and only replaced when the tree outgrows them.
+    private void buildIndex() {
+        int positions = maxOrderNumber - nextOrderNumber;
+        if (positions <= INDEX_MIN_POSITIONS) {
+            indexSize = 0;
+            return;
+        }
+        int size = Integer.highestOneBit(positions) * 2;
+        if (indexed == null || indexed.length < size) {
+            indexed = new Node[size];
+            indexMin = new int[2 * size];
+            indexMax = new int[2 * size];
+        }
+        size = indexed.length;
+        indexSize = size;
+        Arrays.fill(indexed, null);
+        Arrays.fill(indexMin, size, 2 * size, Integer.MAX_VALUE);
+        Arrays.fill(indexMax, size, 2 * size, Integer.MIN_VALUE);
+        for (Node node = findHighestOrderNode(); node != null; node = findNextHighestOrderNode(node)) {
+            int position = maxOrderNumber - node.orderNumber;
+            indexed[position] = node;
+            indexMin[size + position] = node.weight;
+            indexMax[size + position] = node.weight;
+        }
+        for (int i = size - 1; i > 0; i--) {
+            indexMin[i] = Math.min(indexMin[2 * i], indexMin[2 * i + 1]);
+            indexMax[i] = Math.max(indexMax[2 * i], indexMax[2 * i + 1]);
+        }
+    }
+    
+    private void setIndex(int orderNumber, Node node) {
+        int position = maxOrderNumber - orderNumber;
+        indexed[position] = node;
+        int i = indexSize + position;
+        indexMin[i] = node == null ? Integer.MAX_VALUE : node.weight;
+        indexMax[i] = node == null ? Integer.MIN_VALUE : node.weight;
+        for (i >>>= 1; i > 0; i >>>= 1) {
+            indexMin[i] = Math.min(indexMin[2 * i], indexMin[2 * i + 1]);
+            indexMax[i] = Math.max(indexMax[2 * i], indexMax[2 * i + 1]);
+        }
+    }
+    
     private boolean areSiblings(Node n1, Node n2) {
         return n1.parent != null && n1.parent == n2.parent;
     }
@@ -213,6 +451,72 @@ public class HuffmanTree {
         b.orderNumber = temp;
     }
     
+    // Adds extraWeights[symbol] to every leaf and rebuilds the tree as a static
+    // Huffman tree over the new weights. Nodes are numbered in the order the
+    // two-queue merge takes them, which satisfies the sibling property, so
+    // ordinary FGK updates can carry on from the result. Ties always go to
+    // the lower symbol, so encoder and decoder build the same tree.
+    //
+    // The merge runs in the node pool: live leaves are moved to its front,
+    // sorted, and the parents are taken from the nodes behind them (old
+    // internal nodes and the NYTs left by escapes), which always number at
+    // least one fewer than the leaves.
+    public void rebuild(int[] extraWeights) {
+        nodeSwaps.clear();
+        
+        int leafCount = 0;
+        for (int i = 0; i < nodeCount; i++) {
+            Node node = nodes[i];
+            if (node == NYT || (node.symbol >= 0 && symbolNodes[node.symbol] == node)) {
+                nodes[i] = nodes[leafCount];
+                nodes[leafCount++] = node;
+            }
+        }
+        for (int i = 0; i < leafCount; i++) {
+            if (nodes[i] == NYT) {
+                nodes[i] = nodes[0];
+                nodes[0] = NYT;
+            } else {
+                nodes[i].weight += extraWeights[nodes[i].symbol];
+            }
+        }
+        Arrays.sort(nodes, 1, leafCount, LEAF_ORDER);
+        
+        int leafIndex = 0;
+        int mergedIndex = leafCount;
+        int mergedEnd = leafCount;
+        int orderNumber = maxOrderNumber - 2 * (leafCount - 1);
+        while ((leafCount - leafIndex) + (mergedEnd - mergedIndex) > 1) {
+            Node left = nextIsLeaf(leafIndex, leafCount, mergedIndex, mergedEnd)
+                    ? nodes[leafIndex++] : nodes[mergedIndex++];
+            Node right = nextIsLeaf(leafIndex, leafCount, mergedIndex, mergedEnd)
+                    ? nodes[leafIndex++] : nodes[mergedIndex++];
+            
+            Node parent = nodes[mergedEnd++];
+            parent.symbol = -1;
+            parent.weight = left.weight + right.weight;
+            parent.leftChild = left;
+            parent.rightChild = right;
+            left.parent = parent;
+            right.parent = parent;
+            left.orderNumber = orderNumber++;
+            right.orderNumber = orderNumber++;
+        }
+        
+        root = leafIndex < leafCount ? nodes[leafIndex] : nodes[mergedIndex];
+        root.parent = null;
+        root.orderNumber = orderNumber;
+        nodeCount = mergedEnd;
+        nextOrderNumber = maxOrderNumber - nodeCount;
+        buildIndex();
+    }
+    
+    private boolean nextIsLeaf(int leafIndex, int leafCount, int mergedIndex, int mergedEnd) {
+        if (leafIndex >= leafCount) return false;
+        if (mergedIndex >= mergedEnd) return true;
+        return nodes[leafIndex].weight <= nodes[mergedIndex].weight;
+    }
+    
     public String getPathToNode(Node node) {
         StringBuilder path = new StringBuilder();
         Node current = node;
@@ -261,4 +565,58 @@ public class HuffmanTree {
             appendNodeToString(node.rightChild, sb, childPrefix + "└── ", childPrefix + "    ");
         }
     }
+    
+    // An immutable copy of a tree laid out flat: for each node, in
+    // breadth-first order from the root, its symbol, weight, order number
+    // and the indexes of its parent and children (-1 for none). Safe to
+    // share between threads; each tree copies it into nodes of its own.
+    public static final class Template {
+        private static final int STRIDE = 6;
+        
+        private final int alphabetSize;
+        private final int count;
+        private final int[] nodes;
+        private final int nyt;
+        private final int nextOrderNumber;
+        private final long[] seen;
+        private final Template escapeGroups;
+        
+        private Template(HuffmanTree tree) {
+            List<Node> order = new ArrayList<>();
+            order.add(tree.root);
+            for (int i = 0; i < order.size(); i++) {
+                Node node = order.get(i);
+                if (node.leftChild != null) order.add(node.leftChild);
+                if (node.rightChild != null) order.add(node.rightChild);
+            }
+            IdentityHashMap<Node, Integer> index = new IdentityHashMap<>();
+            for (int i = 0; i < order.size(); i++) {
+                index.put(order.get(i), i);
+            }
+            alphabetSize = tree.alphabetSize;
+            count = order.size();
+            nodes = new int[count * STRIDE];
+            for (int i = 0, f = 0; i < count; i++, f += STRIDE) {
+                Node node = order.get(i);
+                nodes[f] = node.symbol;
+                nodes[f + 1] = node.weight;
+                nodes[f + 2] = node.orderNumber;
+                nodes[f + 3] = node.parent == null ? -1 : index.get(node.parent);
+                nodes[f + 4] = node.leftChild == null ? -1 : index.get(node.leftChild);
+                nodes[f + 5] = node.rightChild == null ? -1 : index.get(node.rightChild);
+            }
+            nyt = index.get(tree.NYT);
+            nextOrderNumber = tree.nextOrderNumber;
+            seen = tree.seen.clone();
+            escapeGroups = tree.escapeGroups == null ? null : tree.escapeGroups.snapshot();
+        }
+        
+        public int getAlphabetSize() {
+            return alphabetSize;
+        }
+        
+        public int getNodeCount() {
+            return count;
+        }
+    }
 }
@@ -0,0 +1,97 @@
+import java.io.*;
+
+/*
+ * Round-robins the symbols of a block over N order-0 trees, each with its own
+ * bit stream, so symbol i depends only on symbol i - N. The decoder advances
+ * all N dependency chains in one loop, which gives the CPU independent work
+ * to overlap. The block holds the byte length of each stream (32 bits),
+ * then the N streams back to back.
+ */
+class InterleavedCoder implements BlockCoder {
+    static final int DEFAULT_STREAMS = 4;
+    static final int MAX_STREAMS = 16;
+
+    private final HuffmanTree[] trees;
+    private final ByteArrayOutputStream[] buffers;
+    private final Encoder[] encoders;
+    private final Encoder.BitOutputStream[] bitStreams;
+
+    InterleavedCoder(int streams) {
+        trees = new HuffmanTree[streams];
+        for (int s = 0; s < streams; s++) {
+            trees[s] = new HuffmanTree();
+        }
+        buffers = new ByteArrayOutputStream[streams];
+        encoders = new Encoder[streams];
+        bitStreams = new Encoder.BitOutputStream[streams];
+        reset();
+    }
+
+    @Override
+    public void encodeBlock(Encoder encoder, byte[] block, int length) throws IOException {
+        int streams = trees.length;
+        for (int s = 0; s < streams; s++) {
+            if (encoders[s] == null) {
+                buffers[s] = new ByteArrayOutputStream();
+                bitStreams[s] = new Encoder.BitOutputStream(buffers[s]);
+                encoders[s] = new Encoder(bitStreams[s]);
+            }
+            buffers[s].reset();
+        }
+
+        for (int i = 0; i < length; i++) {
+            int s = i % streams;
+            encoders[s].encodeSymbol(trees[s], block[i] & 0xFF);
+        }
+
+        for (int s = 0; s < streams; s++) {
+            bitStreams[s].padToByte();
+        }
+        for (int s = 0; s < streams; s++) {
+            encoder.writeBits(buffers[s].size(), 32);
+        }
+        for (int s = 0; s < streams; s++) {
+            for (byte b : buffers[s].toByteArray()) {
+                encoder.writeBits(b & 0xFF, 8);
+            }
+        }
+    }
+
+    @Override
+    public void decodeBlock(Decoder decoder, byte[] block, int length) throws IOException {
+        int streams = trees.length;
+        int[] sizes = new int[streams];
+        for (int s = 0; s < streams; s++) {
+            sizes[s] = decoder.readBits(32);
+            if (sizes[s] < 0 || sizes[s] > length) {
+                throw new IOException("Corrupt interleaved stream length: " + sizes[s]);
+            }
+        }
+
+        Decoder[] decoders = new Decoder[streams];
+        for (int s = 0; s < streams; s++) {
+            byte[] bytes = new byte[sizes[s]];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = (byte) decoder.readBits(8);
+            }
+            decoders[s] = new Decoder(new Decoder.BitInputStream(new ByteArrayInputStream(bytes)));
+            decoders[s].setLegacyEscapes(decoder.isLegacyEscapes());
+        }
+
+        for (int i = 0; i < length; i++) {
+            int s = i % streams;
+            int symbol = decoders[s].decodeSymbol(trees[s]);
+            if (symbol == -1) {
+                throw new EOFException("Truncated block");
+            }
+            block[i] = (byte) symbol;
+        }
+    }
+
+    @Override
+    public void reset() {
+        for (HuffmanTree tree : trees) {
+            tree.reset();
+        }
+    }
+}
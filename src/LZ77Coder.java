@@ -0,0 +1,218 @@
+import java.io.*;
+import java.util.Arrays;
+
+/*
+ * LZ77 front end over a 64 KB sliding window that spans block boundaries.
+ * Each token starts with a symbol from the length tree: 0 means a literal
+ * follows in the literal tree, anything else is a match length slot, followed
+ * by a distance slot from the distance tree. Slots are BucketCode buckets,
+ * so all three trees stay within 256 symbols.
+ *
+ * Matches are found through hash chains over 3-byte prefixes. The effort
+ * level (1..9) bounds how many chain entries are tried per position; from
+ * level 4 up a match is also deferred by one byte when the next position
+ * has a longer one.
+ */
+class LZ77Coder implements BlockCoder {
+    static final int MIN_MATCH = 3;
+    static final int MAX_MATCH = 258;
+    static final int WINDOW_SIZE = 1 << 16;
+    static final int DEFAULT_LEVEL = 6;
+
+    private static final int HASH_BITS = 15;
+    private static final int NIL = -1;
+    private static final int[] CHAIN_LIMITS = {4, 8, 16, 32, 64, 128, 256, 1024, 4096};
+    private static final int[] NICE_LENGTHS = {8, 16, 32, 32, 64, 128, 128, 258, 258};
+
+    private final int maxChain;
+    private final int niceLength;
+    private final boolean lazy;
+
+    private final HuffmanTree literals = new HuffmanTree();
+    private final HuffmanTree lengths = new HuffmanTree();
+    private final HuffmanTree distances = new HuffmanTree();
+
+    private byte[] window = new byte[2 * WINDOW_SIZE];
+    private int fill;
+    private final int[] head = new int[1 << HASH_BITS];
+    private final int[] prev = new int[WINDOW_SIZE];
+
+    LZ77Coder(int level) {
+        maxChain = CHAIN_LIMITS[level - 1];
+        niceLength = NICE_LENGTHS[level - 1];
+        lazy = level >= 4;
+        Arrays.fill(head, NIL);
+        Arrays.fill(prev, NIL);
+    }
+
+    @Override
+    public void encodeBlock(Encoder encoder, byte[] block, int length) throws IOException {
+        makeRoom(length);
+        System.arraycopy(block, 0, window, fill, length);
+        int end = fill + length;
+        int position = fill;
+        fill = end;
+
+        int inserted = position;
+        while (position < end) {
+            while (inserted <= position) {
+                insert(inserted++, end);
+            }
+            int matchLength = 0;
+            int matchDistance = 0;
+            long match = findMatch(position, end);
+            if (match != 0) {
+                matchLength = (int) (match >>> 32);
+                matchDistance = (int) match;
+            }
+            if (lazy && matchLength >= MIN_MATCH && matchLength < niceLength && position + 1 < end) {
+                insert(inserted++, end);
+                long next = findMatch(position + 1, end);
+                if ((int) (next >>> 32) > matchLength) {
+                    writeLiteral(encoder, window[position] & 0xFF);
+                    position++;
+                    continue;
+                }
+            }
+
+            if (matchLength >= MIN_MATCH) {
+                writeMatch(encoder, matchLength, matchDistance);
+                position += matchLength;
+            } else {
+                writeLiteral(encoder, window[position] & 0xFF);
+                position++;
+            }
+        }
+        while (inserted < end) {
+            insert(inserted++, end);
+        }
+    }
+
+    @Override
+    public void decodeBlock(Decoder decoder, byte[] block, int length) throws IOException {
+        makeRoom(length);
+        int start = fill;
+        int end = fill + length;
+        while (fill < end) {
+            int lengthSymbol = decodeSymbol(decoder, lengths);
+            if (lengthSymbol == 0) {
+                window[fill++] = (byte) decodeSymbol(decoder, literals);
+                continue;
+            }
+
+            int matchLength = BucketCode.read(decoder, lengthSymbol - 1) + MIN_MATCH;
+            int distance = BucketCode.read(decoder, decodeSymbol(decoder, distances)) + 1;
+            if (matchLength > end - fill || distance > fill || distance > WINDOW_SIZE) {
+                throw new IOException("Corrupt LZ77 match");
+            }
+            for (int i = 0; i < matchLength; i++, fill++) {
+                window[fill] = window[fill - distance];
+            }
+        }
+        // Same chains as the encoder, so a stored block can be replayed
+        // through encodeBlock with the same matches.
+        for (int position = start; position < end; position++) {
+            insert(position, end);
+        }
+        System.arraycopy(window, start, block, 0, length);
+    }
+
+    @Override
+    public void reset() {
+        literals.reset();
+        lengths.reset();
+        distances.reset();
+        fill = 0;
+        Arrays.fill(head, NIL);
+        Arrays.fill(prev, NIL);
+    }
+
+    // Slides the window so the next block fits behind the last WINDOW_SIZE
+    // bytes of history. Both sides do this identically.
+    private void makeRoom(int length) {
+        if (fill + length <= window.length) return;
+        int keep = Math.min(fill, WINDOW_SIZE);
+        int shift = fill - keep;
+        byte[] target = keep + length <= window.length ? window : new byte[keep + length + WINDOW_SIZE];
+        System.arraycopy(window, shift, target, 0, keep);
+        window = target;
+        fill = keep;
+
+        for (int i = 0; i < head.length; i++) {
+            head[i] = head[i] >= shift ? head[i] - shift : NIL;
+        }
+        for (int i = 0; i < prev.length; i++) {
+            prev[i] = prev[i] >= shift ? prev[i] - shift : NIL;
+        }
+        // prev is indexed by position modulo the window, which moved by shift.
+        int offset = shift & (WINDOW_SIZE - 1);
+        if (offset != 0) {
+            int[] rotated = new int[WINDOW_SIZE];
+            for (int i = 0; i < WINDOW_SIZE; i++) {
+                rotated[i] = prev[(i + offset) & (WINDOW_SIZE - 1)];
+            }
+            System.arraycopy(rotated, 0, prev, 0, WINDOW_SIZE);
+        }
+    }
+
+    private int hash(int position) {
+        int key = (window[position] & 0xFF) << 16 | (window[position + 1] & 0xFF) << 8 | (window[position + 2] & 0xFF);
+        return (key * 0x9E3779B1) >>> (32 - HASH_BITS);
+    }
+
+    private void insert(int position, int end) {
+        if (position + MIN_MATCH > end) return;
+        int h = hash(position);
+        prev[position & (WINDOW_SIZE - 1)] = head[h];
+        head[h] = position;
+    }
+
+    // Best match at position as length << 32 | distance, or 0 if none.
+    private long findMatch(int position, int end) {
+        if (position + MIN_MATCH > end) return 0;
+        int limit = Math.min(MAX_MATCH, end - position);
+        int bestLength = MIN_MATCH - 1;
+        int bestDistance = 0;
+        // position itself is already in its chain, so start one link back.
+        int candidate = prev[position & (WINDOW_SIZE - 1)];
+        for (int chain = maxChain; candidate != NIL && chain > 0; chain--) {
+            int distance = position - candidate;
+            if (distance <= 0 || distance > WINDOW_SIZE) break;
+            if (window[candidate + bestLength] == window[position + bestLength]) {
+                int length = 0;
+                while (length < limit && window[candidate + length] == window[position + length]) {
+                    length++;
+                }
+                if (length > bestLength) {
+                    bestLength = length;
+                    bestDistance = distance;
+                    if (length >= niceLength || length == limit) break;
+                }
+            }
+            candidate = prev[candidate & (WINDOW_SIZE - 1)];
+        }
+        return bestLength >= MIN_MATCH ? (long) bestLength << 32 | bestDistance : 0;
+    }
+
+    private void writeLiteral(Encoder encoder, int literal) throws IOException {
+        encoder.encodeSymbol(lengths, 0);
+        encoder.encodeSymbol(literals, literal);
+    }
+
+    private void writeMatch(Encoder encoder, int length, int distance) throws IOException {
+        int lengthValue = length - MIN_MATCH;
+        encoder.encodeSymbol(lengths, BucketCode.bucket(lengthValue) + 1);
+        BucketCode.writeExtraBits(encoder, lengthValue);
+        int distanceValue = distance - 1;
+        encoder.encodeSymbol(distances, BucketCode.bucket(distanceValue));
+        BucketCode.writeExtraBits(encoder, distanceValue);
+    }
+
+    private static int decodeSymbol(Decoder decoder, HuffmanTree tree) throws IOException {
+        int symbol = decoder.decodeSymbol(tree);
+        if (symbol == -1) {
+            throw new EOFException("Truncated block");
+        }
+        return symbol;
+    }
+}
@@ -0,0 +1,121 @@
+import java.io.*;
+import java.util.Arrays;
+
+/*
+ * An encoder/decoder pair for small in-memory payloads, reused from one
+ * message to the next: reset() puts both trees back to empty without
+ * allocating, so a warmed-up codec produces no garbage per message.
+ *
+ * A message is its length as a varint (7 bits per byte, low bits first),
+ * then order-0 codes from an empty tree, padded to a byte. There is no
+ * stream header or checksum; callers frame and verify messages themselves.
+ * The decoder reads exactly the bytes of one message, so messages can be
+ * written back to back on one stream.
+ *
+ * The length comes from the input, so decompress(InputStream) doesn't
+ * trust it for allocation: the buffer starts at most INITIAL_CAPACITY
+ * bytes and doubles as symbols actually decode, and a truncated message
+ * fails before a bogus length can cost more than twice its real size.
+ *
+ * With a template (see MessageDictionary) the tree starts as a copy of it
+ * instead of empty. Both sides must use the same template; nothing in the
+ * message says which one was used.
+ */
+final class MessageCodec {
+    private static final int INITIAL_CAPACITY = 4096;
+
+    private final Encoder encoder = new Encoder(new Encoder.BitOutputStream(OutputStream.nullOutputStream()));
+    private final Decoder decoder = new Decoder(new Decoder.BitInputStream(InputStream.nullInputStream()));
+
+    void compress(byte[] data, int offset, int length, OutputStream out) throws IOException {
+        compress(data, offset, length, out, null);
+    }
+
+    void compress(byte[] data, int offset, int length, OutputStream out, HuffmanTree.Template template)
+            throws IOException {
+        if (template == null) {
+            encoder.reset(out);
+        } else {
+            encoder.reset(out, template);
+        }
+        int remaining = length;
+        while (remaining >= 0x80) {
+            encoder.writeBits((remaining & 0x7F) | 0x80, 8);
+            remaining >>>= 7;
+        }
+        encoder.writeBits(remaining, 8);
+        for (int i = offset; i < offset + length; i++) {
+            encoder.encodeSymbol(data[i] & 0xFF);
+        }
+        encoder.finish();
+    }
+
+    // Returns the message length; throws if it doesn't fit in capacity bytes.
+    int decompress(InputStream in, byte[] out, int offset, int capacity) throws IOException {
+        return decompress(in, out, offset, capacity, null);
+    }
+
+    int decompress(InputStream in, byte[] out, int offset, int capacity, HuffmanTree.Template template)
+            throws IOException {
+        resetDecoder(in, template);
+        int length = readLength();
+        if (length > capacity) {
+            throw new IOException("Message of " + length + " bytes does not fit in " + capacity);
+        }
+        decodeInto(out, offset, length);
+        return length;
+    }
+
+    byte[] decompress(InputStream in) throws IOException {
+        return decompress(in, (HuffmanTree.Template) null);
+    }
+
+    byte[] decompress(InputStream in, HuffmanTree.Template template) throws IOException {
+        resetDecoder(in, template);
+        int length = readLength();
+        byte[] out = new byte[Math.min(length, INITIAL_CAPACITY)];
+        for (int decoded = 0; decoded < length; ) {
+            if (decoded == out.length) {
+                out = Arrays.copyOf(out, (int) Math.min(length, 2L * out.length));
+            }
+            try {
+                decodeInto(out, decoded, out.length - decoded);
+            } catch (EOFException e) {
+                throw new IOException("Corrupt message length: " + length + " bytes, but the input ended first");
+            }
+            decoded = out.length;
+        }
+        return out;
+    }
+
+    private void resetDecoder(InputStream in, HuffmanTree.Template template) {
+        if (template == null) {
+            decoder.reset(in);
+        } else {
+            decoder.reset(in, template);
+        }
+    }
+
+    private int readLength() throws IOException {
+        int length = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = decoder.readBits(8);
+            length |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (length < 0 || (shift == 28 && b > 0x07)) break;
+                return length;
+            }
+        }
+        throw new IOException("Corrupt message length");
+    }
+
+    private void decodeInto(byte[] out, int offset, int length) throws IOException {
+        for (int i = offset; i < offset + length; i++) {
+            int symbol = decoder.decodeSymbol();
+            if (symbol == -1) {
+                throw new EOFException("Truncated message");
+            }
+            out[i] = (byte) symbol;
+        }
+    }
+}
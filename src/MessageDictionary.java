@@ -0,0 +1,107 @@
+import java.io.*;
+
+/*
+ * A pre-trained starting tree for small messages. Coding a short message
+ * from an empty tree spends most of it on escapes and on weights that are
+ * still near zero. A dictionary trains a tree once on sample messages and
+ * keeps it as a HuffmanTree.Template, which each message's codec copies in
+ * one flat pass before it starts.
+ *
+ * Training counts the bytes of the samples, scales the counts down to a
+ * total of about `weight`, and builds a static Huffman tree over them with
+ * HuffmanTree.rebuild. That tree satisfies the sibling property, so FGK
+ * updates carry on from it as usual. A low total lets each message pull
+ * the codes toward its own statistics sooner; a high one trusts the
+ * samples more. Bytes never seen in training are escaped as usual.
+ *
+ * Only the scaled weights are needed to rebuild the same tree, so
+ * toByteArray() writes just those (one int per byte value). Sender and
+ * receiver must use the same dictionary.
+ */
+public final class MessageDictionary {
+    public static final int DEFAULT_WEIGHT = 4096;
+    private static final int ALPHABET_SIZE = 256;
+
+    private final int[] weights;
+    private final HuffmanTree.Template template;
+
+    private MessageDictionary(int[] weights) {
+        this.weights = weights;
+        HuffmanTree tree = new HuffmanTree(ALPHABET_SIZE);
+        int[] extra = new int[ALPHABET_SIZE];
+        for (int symbol = 0; symbol < ALPHABET_SIZE; symbol++) {
+            if (weights[symbol] > 0) {
+                tree.update(symbol);
+                extra[symbol] = weights[symbol] - 1;
+            }
+        }
+        tree.rebuild(extra);
+        template = tree.snapshot();
+    }
+
+    public static MessageDictionary train(Iterable<byte[]> samples) {
+        return train(samples, DEFAULT_WEIGHT);
+    }
+
+    public static MessageDictionary train(Iterable<byte[]> samples, int weight) {
+        if (weight < 1 || weight > 1 << 20) {
+            throw new IllegalArgumentException("Weight must be in 1.." + (1 << 20) + ": " + weight);
+        }
+        long[] counts = new long[ALPHABET_SIZE];
+        long total = 0;
+        for (byte[] sample : samples) {
+            for (byte b : sample) {
+                counts[b & 0xFF]++;
+            }
+            total += sample.length;
+        }
+        // Every byte that occurs keeps at least weight 1, so it is never escaped.
+        int[] weights = new int[ALPHABET_SIZE];
+        for (int symbol = 0; symbol < ALPHABET_SIZE; symbol++) {
+            if (counts[symbol] > 0) {
+                weights[symbol] = (int) Math.max(1, counts[symbol] * weight / total);
+            }
+        }
+        return new MessageDictionary(weights);
+    }
+
+    public static MessageDictionary fromByteArray(byte[] bytes) throws IOException {
+        if (bytes.length != ALPHABET_SIZE * 4) {
+            throw new IOException("Dictionary must be " + ALPHABET_SIZE * 4 + " bytes, not " + bytes.length);
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        int[] weights = new int[ALPHABET_SIZE];
+        long total = 0;
+        for (int symbol = 0; symbol < ALPHABET_SIZE; symbol++) {
+            weights[symbol] = in.readInt();
+            if (weights[symbol] < 0) {
+                throw new IOException("Corrupt dictionary weight for byte " + symbol);
+            }
+            total += weights[symbol];
+        }
+        if (total > Integer.MAX_VALUE / 2) {
+            throw new IOException("Corrupt dictionary: total weight " + total);
+        }
+        return new MessageDictionary(weights);
+    }
+
+    public byte[] toByteArray() {
+        byte[] bytes = new byte[ALPHABET_SIZE * 4];
+        for (int symbol = 0; symbol < ALPHABET_SIZE; symbol++) {
+            int weight = weights[symbol];
+            bytes[symbol * 4] = (byte) (weight >>> 24);
+            bytes[symbol * 4 + 1] = (byte) (weight >>> 16);
+            bytes[symbol * 4 + 2] = (byte) (weight >>> 8);
+            bytes[symbol * 4 + 3] = (byte) weight;
+        }
+        return bytes;
+    }
+
+    public int getWeight(int symbol) {
+        return weights[symbol];
+    }
+
+    HuffmanTree.Template getTemplate() {
+        return template;
+    }
+}
@@ -0,0 +1,74 @@
+import java.util.Arrays;
+
+/*
+ * Picks a block type from a histogram of the first few KB of a block. The
+ * estimate is the order-0 or order-1 entropy of the sample plus a rough cost
+ * for escaping every symbol (or symbol pair) the adaptive trees haven't seen.
+ */
+class ModelSelector {
+    static final int DEFAULT_SAMPLE_SIZE = 4 * 1024;
+
+    private static final double STORED_THRESHOLD = 7.6;
+    private static final double ESCAPE_BITS = 10.0;
+
+    private final int sampleSize;
+    private final int[] counts = new int[256];
+    private final int[] pairCounts = new int[256 * 256];
+    private final int[] touchedPairs;
+
+    ModelSelector(int sampleSize) {
+        this.sampleSize = sampleSize;
+        this.touchedPairs = new int[sampleSize];
+    }
+
+    int select(byte[] block, int length) {
+        int n = Math.min(length, sampleSize);
+        if (n < 2) return AdaptiveHuffmanOutputStream.BLOCK_HUFFMAN;
+
+        Arrays.fill(counts, 0);
+        int distinctPairs = 0;
+        int previous = block[0] & 0xFF;
+        counts[previous]++;
+        for (int i = 1; i < n; i++) {
+            int symbol = block[i] & 0xFF;
+            counts[symbol]++;
+            int pair = (previous << 8) | symbol;
+            if (pairCounts[pair]++ == 0) {
+                touchedPairs[distinctPairs++] = pair;
+            }
+            previous = symbol;
+        }
+
+        double order0Bits = 0;
+        int distinct = 0;
+        for (int count : counts) {
+            if (count > 0) {
+                order0Bits += count * log2((double) n / count);
+                distinct++;
+            }
+        }
+
+        // Context totals are the order-0 counts of the sample minus its last byte.
+        counts[block[n - 1] & 0xFF]--;
+        double order1Bits = 0;
+        for (int i = 0; i < distinctPairs; i++) {
+            int pair = touchedPairs[i];
+            int count = pairCounts[pair];
+            order1Bits += count * log2((double) counts[pair >>> 8] / count);
+            pairCounts[pair] = 0;
+        }
+
+        if (order0Bits / n >= STORED_THRESHOLD) {
+            return AdaptiveHuffmanOutputStream.BLOCK_STORED;
+        }
+        double order0Cost = order0Bits + distinct * ESCAPE_BITS;
+        double order1Cost = order1Bits + distinctPairs * ESCAPE_BITS;
+        return order1Cost < order0Cost
+                ? AdaptiveHuffmanOutputStream.BLOCK_ORDER1
+                : AdaptiveHuffmanOutputStream.BLOCK_HUFFMAN;
+    }
+
+    private static double log2(double x) {
+        return Math.log(x) / Math.log(2);
+    }
+}
@@ -0,0 +1,48 @@
+import java.io.*;
+
+/*
+ * Codes each byte as its high nibble, then its low nibble in a tree picked
+ * by the high nibble. Every tree has at most 16 leaves, so FGK updates touch
+ * a few dozen nodes instead of a few hundred and codes are rarely more than
+ * 4 or 5 bits deep. New nibbles cost at most 4 bits after the escape.
+ */
+class NibbleCoder implements BlockCoder {
+    private final HuffmanTree high = new HuffmanTree(16);
+    private final HuffmanTree[] low = new HuffmanTree[16];
+
+    @Override
+    public void encodeBlock(Encoder encoder, byte[] block, int length) throws IOException {
+        for (int i = 0; i < length; i++) {
+            int highNibble = (block[i] >>> 4) & 15;
+            encoder.encodeSymbol(high, highNibble);
+            encoder.encodeSymbol(lowTree(highNibble), block[i] & 15);
+        }
+    }
+
+    @Override
+    public void decodeBlock(Decoder decoder, byte[] block, int length) throws IOException {
+        for (int i = 0; i < length; i++) {
+            int highNibble = decoder.decodeSymbol(high);
+            int lowNibble = highNibble == -1 ? -1 : decoder.decodeSymbol(lowTree(highNibble));
+            if (lowNibble == -1) {
+                throw new EOFException("Truncated block");
+            }
+            block[i] = (byte) (highNibble << 4 | lowNibble);
+        }
+    }
+
+    @Override
+    public void reset() {
+        high.reset();
+        for (HuffmanTree tree : low) {
+            if (tree != null) tree.reset();
+        }
+    }
+
+    private HuffmanTree lowTree(int highNibble) {
+        if (low[highNibble] == null) {
+            low[highNibble] = new HuffmanTree(16);
+        }
+        return low[highNibble];
+    }
+}
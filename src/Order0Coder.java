@@ -0,0 +1,127 @@
+import java.io.*;
+import java.util.Arrays;
+
+/*
+ * Single adaptive tree. With a batch size above 1, weight increments for
+ * symbols already in the tree are held back and applied in one rebuild every
+ * batchSize symbols, or as soon as one symbol has batchThreshold pending.
+ * Codes don't change in between, so the encoder serves them from a cache.
+ * New symbols still go through the normal FGK update right away.
+ */
+class Order0Coder implements BlockCoder {
+    private final int batchSize;
+    private final int batchThreshold;
+    private final HuffmanTree tree = new HuffmanTree();
+    private final int[] pending = new int[256];
+    private int pendingCount;
+    private final int[] codes = new int[256];
+    private final int[] codeLengths = new int[256];
+
+    Order0Coder() {
+        this(1, 1);
+    }
+
+    Order0Coder(int batchSize, int batchThreshold) {
+        this.batchSize = batchSize;
+        this.batchThreshold = batchThreshold;
+    }
+
+    @Override
+    public void encodeBlock(Encoder encoder, byte[] block, int length) throws IOException {
+        if (batchSize == 1) {
+            for (int i = 0; i < length; i++) {
+                encoder.encodeSymbol(tree, block[i] & 0xFF);
+            }
+            return;
+        }
+
+        for (int i = 0; i < length; i++) {
+            int symbol = block[i] & 0xFF;
+            if (!tree.contains(symbol)) {
+                encoder.writeSymbol(tree, symbol);
+                addSymbol(symbol);
+                continue;
+            }
+
+            int codeLength = codeLengths[symbol];
+            if (codeLength == 0) {
+                codeLength = cacheCode(symbol);
+            }
+            if (codeLength > 0) {
+                encoder.writeBits(codes[symbol], codeLength);
+            } else {
+                encoder.writeSymbol(tree, symbol);
+            }
+            countSymbol(symbol);
+        }
+    }
+
+    @Override
+    public void decodeBlock(Decoder decoder, byte[] block, int length) throws IOException {
+        for (int i = 0; i < length; i++) {
+            int symbol;
+            if (batchSize == 1) {
+                symbol = decoder.decodeSymbol(tree);
+            } else {
+                symbol = decoder.readSymbol(tree);
+                if (symbol != -1) {
+                    if (tree.contains(symbol)) {
+                        countSymbol(symbol);
+                    } else {
+                        addSymbol(symbol);
+                    }
+                }
+            }
+            if (symbol == -1) {
+                throw new EOFException("Truncated block");
+            }
+            block[i] = (byte) symbol;
+        }
+    }
+
+    @Override
+    public void reset() {
+        tree.reset();
+        Arrays.fill(pending, 0);
+        pendingCount = 0;
+        Arrays.fill(codeLengths, 0);
+    }
+
+    private void addSymbol(int symbol) {
+        tree.update(symbol);
+        Arrays.fill(codeLengths, 0);
+    }
+
+    private void countSymbol(int symbol) {
+        pending[symbol]++;
+        pendingCount++;
+        if (pendingCount >= batchSize || pending[symbol] >= batchThreshold) {
+            tree.rebuild(pending);
+            Arrays.fill(pending, 0);
+            pendingCount = 0;
+            Arrays.fill(codeLengths, 0);
+        }
+    }
+
+    // Caches the symbol's code as an int; codes longer than 31 bits are
+    // marked with -1 and written from the tree instead.
+    private int cacheCode(int symbol) {
+        Node node = tree.getNode(symbol);
+        int code = 0;
+        int codeLength = 0;
+        while (node != tree.getRoot()) {
+            if (codeLength == 31) {
+                codeLengths[symbol] = -1;
+                return -1;
+            }
+            if (node.parent.rightChild == node) {
+                code |= 1 << codeLength;
+            }
+            codeLength++;
+            node = node.parent;
+        }
+        codes[symbol] = code;
+        codeLengths[symbol] = codeLength;
+        return codeLength;
+    }
+}
@@ -0,0 +1,41 @@
+import java.io.*;
+
+class Order1Coder implements BlockCoder {
+    private final ContextTreePool pool;
+    private int previous;
+
+    Order1Coder(int poolSize) {
+        pool = new ContextTreePool(poolSize);
+    }
+
+    ContextTreePool getPool() {
+        return pool;
+    }
+
+    @Override
+    public void encodeBlock(Encoder encoder, byte[] block, int length) throws IOException {
+        for (int i = 0; i < length; i++) {
+            int symbol = block[i] & 0xFF;
+            encoder.encodeSymbol(pool.get(previous), symbol);
+            previous = symbol;
+        }
+    }
+
+    @Override
+    public void decodeBlock(Decoder decoder, byte[] block, int length) throws IOException {
+        for (int i = 0; i < length; i++) {
+            int symbol = decoder.decodeSymbol(pool.get(previous));
+            if (symbol == -1) {
+                throw new EOFException("Truncated block");
+            }
+            block[i] = (byte) symbol;
+            previous = symbol;
+        }
+    }
+
+    @Override
+    public void reset() {
+        pool.clear();
+        previous = 0;
+    }
+}
@@ -0,0 +1,32 @@
+import java.io.*;
+
+/*
+ * Order-0 range coding over a FrequencyModel. The model carries over between
+ * blocks like the adaptive trees do; each block flushes and restarts the
+ * range coder itself so it stays byte-aligned and self-delimiting.
+ */
+class RangeCoder implements BlockCoder {
+    private final FrequencyModel model = new FrequencyModel(256);
+
+    @Override
+    public void encodeBlock(Encoder encoder, byte[] block, int length) throws IOException {
+        RangeEncoder range = new RangeEncoder(encoder, model);
+        for (int i = 0; i < length; i++) {
+            range.encodeSymbol(block[i] & 0xFF);
+        }
+        range.finish();
+    }
+
+    @Override
+    public void decodeBlock(Decoder decoder, byte[] block, int length) throws IOException {
+        RangeDecoder range = new RangeDecoder(decoder, model);
+        for (int i = 0; i < length; i++) {
+            block[i] = (byte) range.decodeSymbol();
+        }
+    }
+
+    @Override
+    public void reset() {
+        model.reset();
+    }
+}
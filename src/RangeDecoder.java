@@ -0,0 +1,42 @@
+import java.io.*;
+
+public class RangeDecoder {
+    private final Decoder input;
+    private final FrequencyModel model;
+    private long code;
+    private long range = RangeEncoder.MASK;
+
+    public RangeDecoder(Decoder input) throws IOException {
+        this(input, new FrequencyModel(256));
+    }
+
+    public RangeDecoder(Decoder input, FrequencyModel model) throws IOException {
+        this.input = input;
+        this.model = model;
+        for (int i = 0; i < 5; i++) {
+            code = ((code << 8) | input.readBits(8)) & RangeEncoder.MASK;
+        }
+    }
+
+    public int decodeSymbol() throws IOException {
+        return decodeSymbol(model);
+    }
+
+    public int decodeSymbol(FrequencyModel model) throws IOException {
+        int total = model.getTotal();
+        range /= total;
+        long target = code / range;
+        if (target >= total) {
+            throw new IOException("Corrupt range coded data");
+        }
+        int symbol = model.findSymbol((int) target);
+        code -= model.getCumulative(symbol) * range;
+        range *= model.getFrequency(symbol);
+        while (range < RangeEncoder.TOP) {
+            code = ((code << 8) | input.readBits(8)) & RangeEncoder.MASK;
+            range <<= 8;
+        }
+        model.update(symbol);
+        return symbol;
+    }
+}
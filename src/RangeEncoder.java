@@ -0,0 +1,67 @@
+import java.io.*;
+
+/*
+ * Adaptive range coder writing whole bytes through an Encoder. Carries out of
+ * the 32-bit low end are resolved with a cached byte plus a count of pending
+ * 0xFF bytes, so nothing already written ever needs patching. finish() writes
+ * the final 5 bytes; RangeDecoder reads exactly as many bytes as were written.
+ */
+public class RangeEncoder {
+    static final long TOP = 1L << 24;
+    static final long MASK = 0xFFFFFFFFL;
+
+    private final Encoder output;
+    private final FrequencyModel model;
+    private long low;
+    private long range = MASK;
+    private int cache;
+    private long cacheSize = 1;
+
+    public RangeEncoder(Encoder output) {
+        this(output, new FrequencyModel(256));
+    }
+
+    public RangeEncoder(Encoder output, FrequencyModel model) {
+        this.output = output;
+        this.model = model;
+    }
+
+    public void encodeSymbol(int symbol) throws IOException {
+        encodeSymbol(model, symbol);
+    }
+
+    public void encodeSymbol(FrequencyModel model, int symbol) throws IOException {
+        encode(model.getCumulative(symbol), model.getFrequency(symbol), model.getTotal());
+        model.update(symbol);
+    }
+
+    public void encode(int cumulative, int frequency, int total) throws IOException {
+        range /= total;
+        low += cumulative * range;
+        range *= frequency;
+        while (range < TOP) {
+            range <<= 8;
+            shiftLow();
+        }
+    }
+
+    public void finish() throws IOException {
+        for (int i = 0; i < 5; i++) {
+            shiftLow();
+        }
+    }
+
+    private void shiftLow() throws IOException {
+        if (low < 0xFF000000L || low > MASK) {
+            int carry = (int) (low >>> 32);
+            int pending = cache;
+            do {
+                output.writeBits((pending + carry) & 0xFF, 8);
+                pending = 0xFF;
+            } while (--cacheSize != 0);
+            cache = (int) (low >>> 24) & 0xFF;
+        }
+        cacheSize++;
+        low = (low & 0x00FFFFFFL) << 8;
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Reversible per-block transforms for fixed-width binary records, applied
+ * before the block coder and undone after it. Each block starts over, so a
+ * record that straddles a block boundary is only transformed in part, which
+ * stays correct but compresses worse; keep the block size a multiple of the
+ * width. Trailing bytes that don't fill a whole word pass through unchanged.
+ *
+ *   DELTA:   each big-endian width-byte integer minus the one before it
+ *   XOR:     each width-byte word XORed with the one before it
+ *   SHUFFLE: byte planes: byte 0 of every record, then byte 1, and so on
+ */
+final class RecordTransform {
+    private RecordTransform() {
+    }
+
+    static void forward(HuffmanOptions.Transform transform, int width, byte[] in, int length, byte[] out) {
+        switch (transform) {
+            case DELTA:
+                delta(in, length, width, out, true);
+                break;
+            case XOR:
+                for (int i = 0; i < length; i++) {
+                    out[i] = (byte) (i < width ? in[i] : in[i] ^ in[i - width]);
+                }
+                break;
+            case SHUFFLE:
+                shuffle(in, length, width, out);
+                break;
+            default:
+                System.arraycopy(in, 0, out, 0, length);
+        }
+    }
+
+    // Undoes forward() in place; scratch must hold at least length bytes.
+    static void inverse(HuffmanOptions.Transform transform, int width, byte[] data, int length, byte[] scratch) {
+        switch (transform) {
+            case DELTA:
+                delta(data, length, width, data, false);
+                break;
+            case XOR:
+                for (int i = width; i < length; i++) {
+                    data[i] ^= data[i - width];
+                }
+                break;
+            case SHUFFLE:
+                unshuffle(data, length, width, scratch);
+                System.arraycopy(scratch, 0, data, 0, length);
+                break;
+            default:
+                break;
+        }
+    }
+
+    // Integer delta with wrap-around; in and out may be the same array when
+    // decoding, since each step only looks at the previous decoded value.
+    private static void delta(byte[] in, int length, int width, byte[] out, boolean encode) {
+        int words = length / width;
+        long mask = width == 8 ? -1L : (1L << (8 * width)) - 1;
+        long previous = 0;
+        for (int w = 0; w < words; w++) {
+            int offset = w * width;
+            long value = 0;
+            for (int b = 0; b < width; b++) {
+                value = (value << 8) | (in[offset + b] & 0xFF);
+            }
+            long result = encode ? value - previous : value + previous;
+            previous = encode ? value : result & mask;
+            for (int b = width - 1; b >= 0; b--) {
+                out[offset + b] = (byte) result;
+                result >>>= 8;
+            }
+        }
+        if (in != out) {
+            System.arraycopy(in, words * width, out, words * width, length - words * width);
+        }
+    }
+
+    private static void shuffle(byte[] in, int length, int width, byte[] out) {
+        int records = length / width;
+        for (int r = 0; r < records; r++) {
+            for (int b = 0; b < width; b++) {
+                out[b * records + r] = in[r * width + b];
+            }
+        }
+        System.arraycopy(in, records * width, out, records * width, length - records * width);
+    }
+
+    private static void unshuffle(byte[] in, int length, int width, byte[] out) {
+        int records = length / width;
+        for (int r = 0; r < records; r++) {
+            for (int b = 0; b < width; b++) {
+                out[r * width + b] = in[b * records + r];
+            }
+        }
+        System.arraycopy(in, records * width, out, records * width, length - records * width);
+    }
+}
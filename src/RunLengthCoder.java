@@ -0,0 +1,82 @@
+import java.io.*;
+import java.util.Arrays;
+
+/*
+ * Order-0 coding with a run-length stage. After threshold identical bytes in
+ * a row, the number of further repeats (possibly 0) follows as a BucketCode
+ * value in a separate adaptive length tree, so a run of any length costs
+ * threshold literals plus one length token. Run state starts over at each
+ * block; both trees carry over like the order-0 tree does.
+ */
+class RunLengthCoder implements BlockCoder {
+    static final int DEFAULT_THRESHOLD = 4;
+
+    private final int threshold;
+    private final HuffmanTree literals = new HuffmanTree();
+    private final HuffmanTree runLengths = new HuffmanTree();
+
+    RunLengthCoder(int threshold) {
+        this.threshold = threshold;
+    }
+
+    @Override
+    public void encodeBlock(Encoder encoder, byte[] block, int length) throws IOException {
+        int previous = -1;
+        int count = 0;
+        int i = 0;
+        while (i < length) {
+            int symbol = block[i++] & 0xFF;
+            encoder.encodeSymbol(literals, symbol);
+            count = symbol == previous ? count + 1 : 1;
+            previous = symbol;
+            if (count < threshold) continue;
+
+            int run = 0;
+            while (i + run < length && (block[i + run] & 0xFF) == symbol) {
+                run++;
+            }
+            encoder.encodeSymbol(runLengths, BucketCode.bucket(run));
+            BucketCode.writeExtraBits(encoder, run);
+            i += run;
+            previous = -1;
+            count = 0;
+        }
+    }
+
+    @Override
+    public void decodeBlock(Decoder decoder, byte[] block, int length) throws IOException {
+        int previous = -1;
+        int count = 0;
+        int i = 0;
+        while (i < length) {
+            int symbol = decodeSymbol(decoder, literals);
+            block[i++] = (byte) symbol;
+            count = symbol == previous ? count + 1 : 1;
+            previous = symbol;
+            if (count < threshold) continue;
+
+            int run = BucketCode.read(decoder, decodeSymbol(decoder, runLengths));
+            if (run > length - i) {
+                throw new IOException("Corrupt run length: " + run);
+            }
+            Arrays.fill(block, i, i + run, (byte) symbol);
+            i += run;
+            previous = -1;
+            count = 0;
+        }
+    }
+
+    @Override
+    public void reset() {
+        literals.reset();
+        runLengths.reset();
+    }
+
+    private static int decodeSymbol(Decoder decoder, HuffmanTree tree) throws IOException {
+        int symbol = decoder.decodeSymbol(tree);
+        if (symbol == -1) {
+            throw new EOFException("Truncated block");
+        }
+        return symbol;
+    }
+}
@@ -0,0 +1,111 @@
+import java.io.*;
+import java.util.Arrays;
+
+/*
+ * Codes the first freezeAfter symbols with an adaptive tree, then freezes the
+ * accumulated counts into a canonical code and switches to table-driven
+ * coding. Symbols first seen after the freeze use an escape code followed by
+ * 8 raw bits. With refreeze on, the code is rebuilt from all counts so far at
+ * the start of every later block. Once any count reaches countLimit, all of
+ * them are halved (keeping seen symbols at 1 or more), so a long stream
+ * never overflows them and older data slowly weighs less.
+ */
+class SemiAdaptiveCoder implements BlockCoder {
+    static final int ESCAPE = 256;
+    static final int FROZEN_CODE_LENGTH = 12;
+    static final int DEFAULT_COUNT_LIMIT = 1 << 30;
+
+    private final int freezeAfter;
+    private final boolean refreeze;
+    private final int countLimit;
+    private final HuffmanTree tree = new HuffmanTree();
+    private final int[] counts = new int[257];
+    private long symbolCount;
+    private CanonicalCode frozen;
+
+    SemiAdaptiveCoder(int freezeAfter, boolean refreeze) {
+        this(freezeAfter, refreeze, DEFAULT_COUNT_LIMIT);
+    }
+
+    SemiAdaptiveCoder(int freezeAfter, boolean refreeze, int countLimit) {
+        this.freezeAfter = freezeAfter;
+        this.refreeze = refreeze;
+        this.countLimit = countLimit;
+    }
+
+    int getCount(int symbol) {
+        return counts[symbol];
+    }
+
+    CanonicalCode getFrozenCode() {
+        return frozen;
+    }
+
+    @Override
+    public void encodeBlock(Encoder encoder, byte[] block, int length) throws IOException {
+        startBlock();
+        for (int i = 0; i < length; i++) {
+            int symbol = block[i] & 0xFF;
+            if (frozen == null) {
+                encoder.encodeSymbol(tree, symbol);
+            } else if (frozen.getLength(symbol) > 0) {
+                frozen.write(encoder, symbol);
+            } else {
+                frozen.write(encoder, ESCAPE);
+                encoder.writeBits(symbol, 8);
+            }
+            countSymbol(symbol);
+        }
+    }
+
+    @Override
+    public void decodeBlock(Decoder decoder, byte[] block, int length) throws IOException {
+        startBlock();
+        for (int i = 0; i < length; i++) {
+            int symbol;
+            if (frozen == null) {
+                symbol = decoder.decodeSymbol(tree);
+                if (symbol == -1) {
+                    throw new EOFException("Truncated block");
+                }
+            } else {
+                symbol = frozen.read(decoder);
+                if (symbol == ESCAPE) {
+                    symbol = decoder.readBits(8);
+                }
+            }
+            block[i] = (byte) symbol;
+            countSymbol(symbol);
+        }
+    }
+
+    @Override
+    public void reset() {
+        tree.reset();
+        Arrays.fill(counts, 0);
+        symbolCount = 0;
+        frozen = null;
+    }
+
+    private void startBlock() {
+        if (frozen != null && refreeze) {
+            freeze();
+        }
+    }
+
+    private void countSymbol(int symbol) {
+        if (++counts[symbol] >= countLimit) {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = (counts[i] + 1) >>> 1;
+            }
+        }
+        if (++symbolCount == freezeAfter) {
+            freeze();
+        }
+    }
+
+    private void freeze() {
+        counts[ESCAPE] = 1;
+        frozen = CanonicalCode.fromWeights(counts, FROZEN_CODE_LENGTH);
+    }
+}
@@ -0,0 +1,113 @@
+import java.io.*;
+import java.util.stream.IntStream;
+
+/*
+ * Two-pass static Huffman coding of one block: count the bytes, build a
+ * length-limited canonical code, store the 256 code lengths as nibbles at the
+ * start of the block, then code. Decoding goes through a lookup table that
+ * yields up to three symbols per probe. Blocks are independent of each other.
+ */
+class StaticHuffmanCoder implements BlockCoder {
+    static final int TABLE_BITS = 11;
+    static final int PARALLEL_COUNT_THRESHOLD = 1 << 20;
+    private static final int COUNT_CHUNK = 256 * 1024;
+
+    @Override
+    public void encodeBlock(Encoder encoder, byte[] block, int length) throws IOException {
+        CanonicalCode code = CanonicalCode.fromWeights(countFrequencies(block, length),
+                CanonicalCode.MAX_CODE_LENGTH);
+        for (int symbol = 0; symbol < 256; symbol += 2) {
+            encoder.writeBits((code.getLength(symbol) << 4) | code.getLength(symbol + 1), 8);
+        }
+        for (int i = 0; i < length; i++) {
+            code.write(encoder, block[i] & 0xFF);
+        }
+    }
+
+    @Override
+    public void decodeBlock(Decoder decoder, byte[] block, int length) throws IOException {
+        int[] lengths = new int[256];
+        for (int symbol = 0; symbol < 256; symbol += 2) {
+            int packed = decoder.readBits(8);
+            lengths[symbol] = packed >>> 4;
+            lengths[symbol + 1] = packed & 15;
+        }
+        CanonicalCode code;
+        try {
+            code = CanonicalCode.fromLengths(lengths);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Corrupt static block: " + e.getMessage());
+        }
+        int[] table = multiSymbolTable(code);
+
+        int i = 0;
+        while (length - i >= 3) {
+            int entry = table[decoder.peekBits(TABLE_BITS)];
+            int count = (entry >>> 4) & 3;
+            if (count == 0) {
+                block[i++] = (byte) code.read(decoder);
+                continue;
+            }
+            decoder.skipBits(entry & 15);
+            block[i++] = (byte) (entry >>> 6);
+            if (count > 1) block[i++] = (byte) (entry >>> 14);
+            if (count > 2) block[i++] = (byte) (entry >>> 22);
+        }
+        while (i < length) {
+            block[i++] = (byte) code.read(decoder);
+        }
+    }
+
+    @Override
+    public void reset() {
+    }
+
+    // First pass. Large blocks are counted in chunks on the common pool.
+    static int[] countFrequencies(byte[] block, int length) {
+        if (length < PARALLEL_COUNT_THRESHOLD) {
+            return countRange(block, 0, length);
+        }
+        int chunks = (length + COUNT_CHUNK - 1) / COUNT_CHUNK;
+        return IntStream.range(0, chunks).parallel()
+                .mapToObj(c -> countRange(block, c * COUNT_CHUNK, Math.min(length, (c + 1) * COUNT_CHUNK)))
+                .reduce(new int[256], (a, b) -> {
+                    int[] sum = new int[256];
+                    for (int s = 0; s < 256; s++) sum[s] = a[s] + b[s];
+                    return sum;
+                });
+    }
+
+    private static int[] countRange(byte[] block, int from, int to) {
+        int[] counts = new int[256];
+        for (int i = from; i < to; i++) {
+            counts[block[i] & 0xFF]++;
+        }
+        return counts;
+    }
+
+    // Entry layout: total bits (4) | symbol count (2) | up to three 8-bit
+    // symbols. A count of 0 means the first code is longer than TABLE_BITS.
+    private static int[] multiSymbolTable(CanonicalCode code) {
+        int[] table = new int[1 << TABLE_BITS];
+        int codeBits = code.getTableBits();
+        for (int index = 0; index < table.length; index++) {
+            int used = 0;
+            int count = 0;
+            int entry = 0;
+            while (count < 3) {
+                int window = (index << used) & ((1 << TABLE_BITS) - 1);
+                int probe = codeBits >= TABLE_BITS
+                        ? window << (codeBits - TABLE_BITS)
+                        : window >>> (TABLE_BITS - codeBits);
+                int packed = code.lookup(probe);
+                int symbolLength = packed & 15;
+                if (packed == 0 || used + symbolLength > TABLE_BITS) break;
+                entry |= (packed >>> 4) << (6 + 8 * count);
+                used += symbolLength;
+                count++;
+            }
+            table[index] = count == 0 ? 0 : entry | (count << 4) | used;
+        }
+        return table;
+    }
+}
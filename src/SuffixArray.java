@@ -0,0 +1,115 @@
+import java.util.Arrays;
+
+/*
+ * SA-IS suffix array construction (Nong, Zhang and Chan), linear time.
+ * The text must end with a unique smallest symbol 0, and every symbol must
+ * be below alphabetSize.
+ */
+final class SuffixArray {
+    private SuffixArray() {
+    }
+
+    static void build(int[] text, int[] sa, int n, int alphabetSize) {
+        if (n == 1) {
+            sa[0] = 0;
+            return;
+        }
+
+        // true = S-type: the suffix is smaller than the one after it.
+        boolean[] types = new boolean[n];
+        types[n - 1] = true;
+        for (int i = n - 2; i >= 0; i--) {
+            types[i] = text[i] < text[i + 1] || (text[i] == text[i + 1] && types[i + 1]);
+        }
+
+        // Sort the LMS substrings by induction from their bucket ends.
+        int[] buckets = new int[alphabetSize];
+        bucketEnds(text, buckets, n, true);
+        Arrays.fill(sa, 0, n, -1);
+        for (int i = 1; i < n; i++) {
+            if (isLms(types, i)) sa[--buckets[text[i]]] = i;
+        }
+        induce(text, sa, types, buckets, n);
+
+        // Name the sorted LMS substrings; equal substrings share a name.
+        int lmsCount = 0;
+        for (int i = 0; i < n; i++) {
+            if (isLms(types, sa[i])) sa[lmsCount++] = sa[i];
+        }
+        Arrays.fill(sa, lmsCount, n, -1);
+        int names = 0;
+        int previous = -1;
+        for (int i = 0; i < lmsCount; i++) {
+            int position = sa[i];
+            boolean differs = false;
+            for (int d = 0; ; d++) {
+                if (previous == -1 || text[position + d] != text[previous + d]
+                        || types[position + d] != types[previous + d]) {
+                    differs = true;
+                    break;
+                }
+                if (d > 0 && (isLms(types, position + d) || isLms(types, previous + d))) break;
+            }
+            if (differs) {
+                names++;
+                previous = position;
+            }
+            sa[lmsCount + position / 2] = names - 1;
+        }
+        int[] reduced = new int[lmsCount];
+        for (int i = n - 1, j = lmsCount - 1; i >= lmsCount; i--) {
+            if (sa[i] >= 0) reduced[j--] = sa[i];
+        }
+
+        // Sort the LMS suffixes, recursing while names aren't unique yet.
+        int[] reducedSa = new int[lmsCount];
+        if (names < lmsCount) {
+            build(reduced, reducedSa, lmsCount, names);
+        } else {
+            for (int i = 0; i < lmsCount; i++) {
+                reducedSa[reduced[i]] = i;
+            }
+        }
+
+        int[] lmsPositions = new int[lmsCount];
+        for (int i = 1, j = 0; i < n; i++) {
+            if (isLms(types, i)) lmsPositions[j++] = i;
+        }
+        bucketEnds(text, buckets, n, true);
+        Arrays.fill(sa, 0, n, -1);
+        for (int i = lmsCount - 1; i >= 0; i--) {
+            int position = lmsPositions[reducedSa[i]];
+            sa[--buckets[text[position]]] = position;
+        }
+        induce(text, sa, types, buckets, n);
+    }
+
+    private static boolean isLms(boolean[] types, int i) {
+        return i > 0 && types[i] && !types[i - 1];
+    }
+
+    private static void bucketEnds(int[] text, int[] buckets, int n, boolean end) {
+        Arrays.fill(buckets, 0);
+        for (int i = 0; i < n; i++) {
+            buckets[text[i]]++;
+        }
+        int sum = 0;
+        for (int c = 0; c < buckets.length; c++) {
+            sum += buckets[c];
+            buckets[c] = end ? sum : sum - buckets[c];
+        }
+    }
+
+    private static void induce(int[] text, int[] sa, boolean[] types, int[] buckets, int n) {
+        bucketEnds(text, buckets, n, false);
+        for (int i = 0; i < n; i++) {
+            int j = sa[i] - 1;
+            if (j >= 0 && !types[j]) sa[buckets[text[j]]++] = j;
+        }
+        bucketEnds(text, buckets, n, true);
+        for (int i = n - 1; i >= 0; i--) {
+            int j = sa[i] - 1;
+            if (j >= 0 && types[j]) sa[--buckets[text[j]]] = j;
+        }
+    }
+}
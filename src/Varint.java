@@ -0,0 +1,37 @@
+import java.io.*;
+
+/*
+ * Non-negative ints as 7 bits per byte, low bits first, with the top bit
+ * set on every byte but the last: values below 128 take one byte, and no
+ * int takes more than five.
+ */
+final class Varint {
+    static final int MAX_BYTES = 5;
+
+    private Varint() {
+    }
+
+    static void write(DataOutput out, int value) throws IOException {
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative varint: " + value);
+        }
+        while (value >= 0x80) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    static int read(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 7 * MAX_BYTES; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (value < 0 || (shift == 28 && b > 0x07)) break;
+                return value;
+            }
+        }
+        throw new IOException("Corrupt varint");
+    }
+}
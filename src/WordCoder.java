@@ -0,0 +1,185 @@
+import java.io.*;
+import java.util.Arrays;
+
+/*
+ * Word-level coding. A block is split into tokens: runs of letters, digits
+ * and '_', or runs of anything else, at most MAX_TOKEN_LENGTH bytes each.
+ * Every distinct token gets the next dictionary id, and ids are coded through
+ * one adaptive tree whose alphabet grows as tokens appear. A token seen for
+ * the first time is sent as the tree's escape, then its length and bytes
+ * through byte-level trees; the decoder assigns it the same id. Once the
+ * dictionary is full, new tokens are still spelled out but get no id.
+ * Tokens never cross a block boundary. Logs full of ids and numbers grow
+ * the id tree to tens of thousands of symbols; HuffmanTree's leader index
+ * keeps each update logarithmic in that rather than linear.
+ */
+class WordCoder implements BlockCoder {
+    static final int MAX_TOKENS = HuffmanTree.MAX_ALPHABET_SIZE;
+    static final int MAX_TOKEN_LENGTH = 255;
+
+    private final HuffmanTree ids = new HuffmanTree(MAX_TOKENS);
+    private final HuffmanTree spellingLengths = new HuffmanTree();
+    private final HuffmanTree spellingBytes = new HuffmanTree();
+    private final TokenDictionary dictionary = new TokenDictionary();
+
+    WordCoder() {
+        reset();
+    }
+
+    @Override
+    public void encodeBlock(Encoder encoder, byte[] block, int length) throws IOException {
+        int start = 0;
+        while (start < length) {
+            int end = tokenEnd(block, start, length);
+            int id = dictionary.find(block, start, end - start);
+            if (id >= 0) {
+                encoder.encodeSymbol(ids, id);
+            } else {
+                encoder.writeEscape(ids);
+                encoder.encodeSymbol(spellingLengths, end - start);
+                for (int i = start; i < end; i++) {
+                    encoder.encodeSymbol(spellingBytes, block[i] & 0xFF);
+                }
+                addToken(block, start, end - start);
+            }
+            start = end;
+        }
+    }
+
+    @Override
+    public void decodeBlock(Decoder decoder, byte[] block, int length) throws IOException {
+        int position = 0;
+        while (position < length) {
+            int id = decoder.readSymbolOrEscape(ids);
+            if (id == -1) {
+                throw new EOFException("Truncated block");
+            }
+            if (id != Decoder.ESCAPE) {
+                ids.update(id);
+                if (id >= dictionary.size() || dictionary.length(id) > length - position) {
+                    throw new IOException("Corrupt token id: " + id);
+                }
+                position = dictionary.copy(id, block, position);
+                continue;
+            }
+
+            int tokenLength = decodeSymbol(decoder, spellingLengths);
+            if (tokenLength == 0 || tokenLength > length - position) {
+                throw new IOException("Corrupt token length: " + tokenLength);
+            }
+            for (int i = 0; i < tokenLength; i++) {
+                block[position + i] = (byte) decodeSymbol(decoder, spellingBytes);
+            }
+            addToken(block, position, tokenLength);
+            position += tokenLength;
+        }
+    }
+
+    @Override
+    public void reset() {
+        ids.reset();
+        spellingLengths.reset();
+        spellingBytes.reset();
+        dictionary.clear();
+    }
+
+    int getDictionarySize() {
+        return dictionary.size();
+    }
+
+    private void addToken(byte[] data, int offset, int length) {
+        if (dictionary.size() < MAX_TOKENS) {
+            ids.update(dictionary.add(data, offset, length));
+        }
+    }
+
+    static int tokenEnd(byte[] data, int start, int limit) {
+        boolean word = isWordByte(data[start]);
+        int end = start + 1;
+        while (end < limit && end - start < MAX_TOKEN_LENGTH && isWordByte(data[end]) == word) {
+            end++;
+        }
+        return end;
+    }
+
+    private static boolean isWordByte(byte b) {
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9') || b == '_';
+    }
+
+    private static int decodeSymbol(Decoder decoder, HuffmanTree tree) throws IOException {
+        int symbol = decoder.decodeSymbol(tree);
+        if (symbol == -1) {
+            throw new EOFException("Truncated block");
+        }
+        return symbol;
+    }
+
+    // Open-addressing hash table from token bytes to ids, over one shared
+    // byte arena. Primitive arrays only, no per-token objects.
+    private static class TokenDictionary {
+        private static final int SLOTS = MAX_TOKENS * 2;
+
+        private final int[] slots = new int[SLOTS];
+        private final int[] offsets = new int[MAX_TOKENS];
+        private final int[] lengths = new int[MAX_TOKENS];
+        private byte[] arena = new byte[64 * 1024];
+        private int arenaSize;
+        private int size;
+
+        int size() {
+            return size;
+        }
+
+        int length(int id) {
+            return lengths[id];
+        }
+
+        int find(byte[] data, int offset, int length) {
+            for (int slot = hash(data, offset, length); ; slot = (slot + 1) & (SLOTS - 1)) {
+                int id = slots[slot] - 1;
+                if (id < 0) return -1;
+                if (lengths[id] == length
+                        && Arrays.equals(arena, offsets[id], offsets[id] + length, data, offset, offset + length)) {
+                    return id;
+                }
+            }
+        }
+
+        int add(byte[] data, int offset, int length) {
+            if (arenaSize + length > arena.length) {
+                arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arenaSize + length));
+            }
+            System.arraycopy(data, offset, arena, arenaSize, length);
+            int id = size++;
+            offsets[id] = arenaSize;
+            lengths[id] = length;
+            arenaSize += length;
+
+            int slot = hash(data, offset, length);
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & (SLOTS - 1);
+            }
+            slots[slot] = id + 1;
+            return id;
+        }
+
+        int copy(int id, byte[] target, int position) {
+            System.arraycopy(arena, offsets[id], target, position, lengths[id]);
+            return position + lengths[id];
+        }
+
+        void clear() {
+            Arrays.fill(slots, 0);
+            arenaSize = 0;
+            size = 0;
+        }
+
+        private static int hash(byte[] data, int offset, int length) {
+            int h = 0x811C9DC5;
+            for (int i = offset; i < offset + length; i++) {
+                h = (h ^ (data[i] & 0xFF)) * 0x01000193;
+            }
+            return (h ^ (h >>> 16)) & (SLOTS - 1);
+        }
+    }
+}
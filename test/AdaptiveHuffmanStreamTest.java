@@ -0,0 +1,640 @@
+import java.io.*;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Flow;
+
+public class AdaptiveHuffmanStreamTest {
+
+    private static byte[] compress(byte[] data, int blockSize) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (AdaptiveHuffmanOutputStream out = new AdaptiveHuffmanOutputStream(compressed, blockSize)) {
+            out.write(data);
+        }
+        return compressed.toByteArray();
+    }
+
+    private static byte[] decompress(byte[] compressed) throws IOException {
+        try (AdaptiveHuffmanInputStream in = new AdaptiveHuffmanInputStream(new ByteArrayInputStream(compressed))) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static void check(String name, byte[] expected, byte[] actual) {
+        if (Arrays.equals(expected, actual)) {
+            System.out.println("Test passed: " + name);
+        } else {
+            System.out.println("Test failed: " + name + " (expected " + expected.length
+                    + " bytes, got " + actual.length + ")");
+        }
+    }
+
+    public static void testTextRoundTrip() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            text.append("Line ").append(i).append(": The quick brown fox jumps over the lazy dog.\n");
+        }
+        byte[] data = text.toString().getBytes("UTF-8");
+        byte[] compressed = compress(data, 1000);
+        check("Text round trip across blocks", data, decompress(compressed));
+        System.out.println("Original size: " + data.length + " bytes");
+        System.out.println("Compressed size: " + compressed.length + " bytes");
+    }
+
+    public static void testBinaryRoundTrip() throws IOException {
+        byte[] data = new byte[20000];
+        new Random(42).nextBytes(data);
+        for (int i = 0; i < 256; i++) {
+            data[i] = (byte) i;
+        }
+        check("Binary round trip", data, decompress(compress(data, 4096)));
+    }
+
+    public static void testEmptyStream() throws IOException {
+        check("Empty stream", new byte[0], decompress(compress(new byte[0], 16)));
+    }
+
+    public static void testSingleByteWritesAndReads() throws IOException {
+        byte[] data = "ABRACADABRA ABRACADABRA".getBytes("UTF-8");
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (AdaptiveHuffmanOutputStream out = new AdaptiveHuffmanOutputStream(compressed, 5)) {
+            for (byte b : data) {
+                out.write(b);
+            }
+        }
+
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        try (AdaptiveHuffmanInputStream in = new AdaptiveHuffmanInputStream(
+                new ByteArrayInputStream(compressed.toByteArray()))) {
+            int b;
+            while ((b = in.read()) != -1) {
+                result.write(b);
+            }
+        }
+        check("Single byte writes and reads", data, result.toByteArray());
+    }
+
+    public static void testWriteAfterFinish() throws IOException {
+        AdaptiveHuffmanOutputStream out = new AdaptiveHuffmanOutputStream(new ByteArrayOutputStream());
+        out.write('A');
+        out.finish();
+        try {
+            out.write('B');
+            System.out.println("Test failed: write after finish should throw");
+        } catch (IOException e) {
+            System.out.println("Test passed: write after finish throws");
+        }
+        out.close();
+    }
+
+    public static void testFlushMakesDataAvailable() throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        AdaptiveHuffmanOutputStream out = new AdaptiveHuffmanOutputStream(compressed);
+        out.write("first message;".getBytes("UTF-8"));
+        out.flush();
+        out.write("second message;".getBytes("UTF-8"));
+        out.flush();
+
+        // No end marker has been written yet, like a live stream.
+        AdaptiveHuffmanInputStream in = new AdaptiveHuffmanInputStream(
+                new ByteArrayInputStream(compressed.toByteArray()));
+        byte[] buffer = new byte[1024];
+        int first = in.read(buffer, 0, buffer.length);
+        check("Flushed block returned on its own", "first message;".getBytes("UTF-8"),
+                Arrays.copyOf(buffer, Math.max(first, 0)));
+        int second = in.read(buffer, 0, buffer.length);
+        check("Second flushed block decodes", "second message;".getBytes("UTF-8"),
+                Arrays.copyOf(buffer, Math.max(second, 0)));
+
+        // The first block, all new symbols, is stored. The second reuses most
+        // of them, so it only codes smaller than raw if the tree survived.
+        int[] types = blockTypes(compressed.toByteArray());
+        if (types.length == 2 && types[0] == AdaptiveHuffmanOutputStream.BLOCK_STORED
+                && types[1] == AdaptiveHuffmanOutputStream.BLOCK_HUFFMAN) {
+            System.out.println("Test passed: tree state kept across flush");
+        } else {
+            System.out.println("Test failed: tree state lost across flush, block types " + Arrays.toString(types));
+        }
+
+        out.close();
+    }
+
+    public static void testFlushLatency() throws Exception {
+        PipedOutputStream pipeOut = new PipedOutputStream();
+        PipedInputStream pipeIn = new PipedInputStream(pipeOut, 64 * 1024);
+        int messages = 2000;
+        byte[] message = "{\"event\":\"tick\",\"value\":42}".getBytes("UTF-8");
+
+        Thread reader = new Thread(() -> {
+            try (AdaptiveHuffmanInputStream in = new AdaptiveHuffmanInputStream(pipeIn)) {
+                byte[] buffer = new byte[message.length];
+                for (int i = 0; i < messages; i++) {
+                    int n = 0;
+                    while (n < buffer.length) {
+                        n += in.read(buffer, n, buffer.length - n);
+                    }
+                }
+                in.read();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+        reader.start();
+
+        long start = System.nanoTime();
+        try (AdaptiveHuffmanOutputStream out = new AdaptiveHuffmanOutputStream(pipeOut)) {
+            for (int i = 0; i < messages; i++) {
+                out.write(message);
+                out.flush();
+            }
+        }
+        reader.join();
+        long elapsed = System.nanoTime() - start;
+
+        System.out.printf("Average time per flushed message: %.1f us\n", elapsed / 1000.0 / messages);
+        System.out.println("Test passed: flushed messages delivered");
+    }
+
+    public static void testConcatenatedMembers() throws IOException {
+        byte[] first = "first member, ".getBytes("UTF-8");
+        byte[] second = "second member with different symbols: 0123456789".getBytes("UTF-8");
+
+        ByteArrayOutputStream concatenated = new ByteArrayOutputStream();
+        concatenated.write(compress(first, 8));
+        concatenated.write(compress(new byte[0], 8));
+        concatenated.write(compress(second, 8));
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(first);
+        expected.write(second);
+        check("Concatenated members", expected.toByteArray(), decompress(concatenated.toByteArray()));
+    }
+
+    public static void testAppendToFile() throws IOException {
+        File part1 = File.createTempFile("test_part1", ".txt");
+        File part2 = File.createTempFile("test_part2", ".txt");
+        File compressedFile = File.createTempFile("test_appended", ".bin");
+        File decompressedFile = File.createTempFile("test_appended", ".txt");
+        try (FileWriter writer = new FileWriter(part1)) {
+            writer.write("2024-01-01 12:00:00 INFO service started\n");
+        }
+        try (FileWriter writer = new FileWriter(part2)) {
+            writer.write("2024-01-01 12:00:05 WARN queue depth 17\n");
+        }
+
+        AdaptiveHuffman.compress(part1.getAbsolutePath(), compressedFile.getAbsolutePath());
+        long firstMemberSize = compressedFile.length();
+        byte[] firstMember = Files.readAllBytes(compressedFile.toPath());
+        AdaptiveHuffman.append(part2.getAbsolutePath(), compressedFile.getAbsolutePath());
+        AdaptiveHuffman.decompress(compressedFile.getAbsolutePath(), decompressedFile.getAbsolutePath());
+
+        byte[] all = Files.readAllBytes(compressedFile.toPath());
+        check("Earlier member untouched", firstMember, Arrays.copyOf(all, (int) firstMemberSize));
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(Files.readAllBytes(part1.toPath()));
+        expected.write(Files.readAllBytes(part2.toPath()));
+        check("Appended member", expected.toByteArray(),
+                Files.readAllBytes(decompressedFile.toPath()));
+
+        part1.delete();
+        part2.delete();
+        compressedFile.delete();
+        decompressedFile.delete();
+    }
+
+    public static void testIncompressibleDataIsStored() throws IOException {
+        byte[] data = new byte[64 * 1024];
+        new Random(7).nextBytes(data);
+        byte[] text = "mostly text after the random part. ".repeat(400).getBytes("UTF-8");
+
+        ByteArrayOutputStream input = new ByteArrayOutputStream();
+        input.write(data);
+        input.write(text);
+        byte[] mixed = input.toByteArray();
+
+        byte[] compressed = compress(mixed, 16 * 1024);
+        check("Mixed stored and coded blocks", mixed, decompress(compressed));
+
+        // 4 stored blocks cost a type byte, a 3-byte length and a model byte
+        // each on top of the raw data.
+        long bound = data.length + 4 * 5 + text.length;
+        if (compressed.length <= bound) {
+            System.out.println("Test passed: random data not expanded");
+        } else {
+            System.out.println("Test failed: compressed size " + compressed.length + " exceeds " + bound);
+        }
+        System.out.println("Original size: " + mixed.length + " bytes");
+        System.out.println("Compressed size: " + compressed.length + " bytes");
+    }
+
+    public static void testStoredBlocksDecodeByCopy() throws IOException {
+        byte[] data = new byte[64 * 1024];
+        new Random(26).nextBytes(data);
+
+        // Encoding still codes every block before storing it; decoding a
+        // stored block longer than MAX_REPLAY_LENGTH is only a copy.
+        long encodeNanos = Long.MAX_VALUE;
+        long decodeNanos = Long.MAX_VALUE;
+        byte[] compressed = null;
+        byte[] restored = null;
+        for (int round = 0; round < 2; round++) {
+            long start = System.nanoTime();
+            compressed = compress(data, 16 * 1024);
+            encodeNanos = Math.min(encodeNanos, System.nanoTime() - start);
+            start = System.nanoTime();
+            restored = decompress(compressed);
+            decodeNanos = Math.min(decodeNanos, System.nanoTime() - start);
+        }
+        check("Random data round trip", data, restored);
+        System.out.printf("Encode: %.1f ms, decode: %.1f ms%n", encodeNanos / 1e6, decodeNanos / 1e6);
+        if (decodeNanos * 10 < encodeNanos) {
+            System.out.println("Test passed: stored blocks decode at copy speed");
+        } else {
+            System.out.println("Test failed: stored blocks decode as slowly as they encode");
+        }
+    }
+
+    // Rewrites a default-options stream of coded blocks with the int
+    // lengths of versions 1 and 2.
+    private static byte[] toVersion2(byte[] compressed) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(compressed));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeShort(in.readUnsignedShort());
+        in.readUnsignedByte();
+        out.writeByte(2);
+        out.writeByte(in.readUnsignedByte());
+        int type;
+        while ((type = in.readUnsignedByte()) != AdaptiveHuffmanOutputStream.BLOCK_END) {
+            int rawLength = Varint.read(in);
+            byte[] coded = new byte[Varint.read(in)];
+            in.readFully(coded);
+            out.writeByte(type);
+            out.writeInt(rawLength);
+            out.writeInt(coded.length);
+            out.write(coded);
+        }
+        out.writeByte(AdaptiveHuffmanOutputStream.BLOCK_END);
+        return bytes.toByteArray();
+    }
+
+    public static void testCorruptBlockLengths() throws IOException {
+        // A coded block claiming 2 GB, and a stored block claiming 60 MB
+        // with five bytes behind it.
+        byte[][] corrupt = {
+            { (byte) 0xAD, 0x48, 3, 0, 1, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07, 5, 1, 2, 3, 4, 5 },
+            { (byte) 0xAD, 0x48, 3, 0, 2, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x1E, 0, 1, 2, 3, 4, 5 },
+            { (byte) 0xAD, 0x48, 4, 0, 0 },
+        };
+        java.lang.management.ThreadMXBean bean = java.lang.management.ManagementFactory.getThreadMXBean();
+        for (byte[] stream : corrupt) {
+            long before = bean instanceof com.sun.management.ThreadMXBean
+                    ? ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId()) : 0;
+            try {
+                decompress(stream);
+                System.out.println("Test failed: corrupt stream decoded");
+            } catch (IOException e) {
+                long allocated = bean instanceof com.sun.management.ThreadMXBean
+                        ? ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId())
+                                - before : 0;
+                if (allocated < 1 << 20) {
+                    System.out.println("Test passed: rejected with \"" + e.getMessage() + "\", " + allocated
+                            + " bytes allocated");
+                } else {
+                    System.out.println("Test failed: " + allocated + " bytes allocated before \"" + e.getMessage() + "\"");
+                }
+            } catch (OutOfMemoryError e) {
+                System.out.println("Test failed: corrupt block length ran out of memory");
+            }
+        }
+
+        // Streams with int block lengths still decode.
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            sb.append("line ").append(i % 37).append(" of the version 2 stream\n");
+        }
+        byte[] data = sb.toString().getBytes("UTF-8");
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (AdaptiveHuffmanOutputStream out = new AdaptiveHuffmanOutputStream(compressed, 8192)) {
+            out.write(data, 0, 1000);
+            out.flush();
+            out.write(data, 1000, data.length - 1000);
+        }
+        check("Version 2 stream still decodes", data, decompress(toVersion2(compressed.toByteArray())));
+    }
+
+    public static void testFlushedSmallMessages() throws IOException {
+        Random random = new Random(30);
+        String[] names = { "open", "read", "seek", "stat", "sync" };
+        ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        for (int i = 0; i < 2000; i++) {
+            raw.write(String.format("%s=%05d;", names[random.nextInt(names.length)], random.nextInt(100000))
+                    .getBytes("UTF-8"));
+        }
+        byte[] data = raw.toByteArray();
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (AdaptiveHuffmanOutputStream out = new AdaptiveHuffmanOutputStream(compressed)) {
+            for (int offset = 0; offset < data.length; offset += 11) {
+                out.write(data, offset, 11);
+                out.flush();
+            }
+        }
+        check("Flushed small messages round trip", data, decompress(compressed.toByteArray()));
+        int[] types = blockTypes(compressed.toByteArray());
+        int stored = 0;
+        for (int i = 100; i < types.length; i++) {
+            if (types[i] == AdaptiveHuffmanOutputStream.BLOCK_STORED) stored++;
+        }
+        if (types.length == 2000 && stored == 0 && compressed.size() < data.length) {
+            System.out.println("Test passed: every block after the first 100 coded, " + compressed.size()
+                    + " bytes for " + data.length);
+        } else {
+            System.out.println("Test failed: " + stored + " late blocks stored, " + compressed.size()
+                    + " bytes for " + data.length);
+        }
+
+        // Stored blocks are replayed through whichever coder produced them,
+        // so every mode has to stay in step with its decoder.
+        boolean allModes = true;
+        for (HuffmanOptions.Mode mode : HuffmanOptions.Mode.values()) {
+            ByteArrayOutputStream modeCompressed = new ByteArrayOutputStream();
+            try (AdaptiveHuffmanOutputStream out = new AdaptiveHuffmanOutputStream(modeCompressed,
+                    new HuffmanOptions().mode(mode))) {
+                for (int offset = 0; offset < 5500; offset += 11) {
+                    out.write(data, offset, 11);
+                    out.flush();
+                }
+            }
+            if (!Arrays.equals(Arrays.copyOf(data, 5500), decompress(modeCompressed.toByteArray()))) {
+                System.out.println("Test failed: flushed small messages in " + mode + " mode");
+                allModes = false;
+            }
+        }
+        if (allModes) {
+            System.out.println("Test passed: flushed small messages in every mode");
+        }
+    }
+
+    public static void testCompactHeader() throws IOException {
+        // Magic, version, a zero option count and the end marker.
+        byte[] empty = compress(new byte[0], 1024);
+        byte[] hello = compress("hello".getBytes("UTF-8"), 1024);
+        if (empty.length == 5 && hello.length <= 5 + 3 + 6) {
+            System.out.println("Test passed: default header is " + (empty.length - 1) + " bytes, \"hello\" compresses to "
+                    + hello.length);
+        } else {
+            System.out.println("Test failed: default stream is " + empty.length + " bytes, \"hello\" "
+                    + hello.length);
+        }
+
+        // Non-default settings are written and read back.
+        HuffmanOptions options = new HuffmanOptions()
+                .contextPoolSize(16).batchSize(300).batchThreshold(20).freezeAfter(100000).refreeze(true)
+                .lzLevel(9).runThreshold(7).streams(2).transform(HuffmanOptions.Transform.XOR, 8)
+                .delimiter('\t').maxColumns(200);
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        options.writeHeader(new DataOutputStream(header));
+        HuffmanOptions read = HuffmanOptions.readHeader(
+                new DataInputStream(new ByteArrayInputStream(header.toByteArray())), AdaptiveHuffmanOutputStream.VERSION);
+        boolean same = read.getContextPoolSize() == 16 && read.getBatchSize() == 300 && read.getBatchThreshold() == 20
+                && read.getFreezeAfter() == 100000 && read.isRefreeze() && read.getLzLevel() == 9
+                && read.getRunThreshold() == 7 && read.getStreams() == 2
+                && read.getTransform() == HuffmanOptions.Transform.XOR && read.getTransformWidth() == 8
+                && read.getDelimiter() == '\t' && read.getMaxColumns() == 200;
+        if (same && header.size() < 1 + 12 * 5) {
+            System.out.println("Test passed: 12 non-default options in a " + header.size() + "-byte header");
+        } else {
+            System.out.println("Test failed: options header of " + header.size() + " bytes read back wrong");
+        }
+    }
+
+    // Block types of a stream's first member, up to its end or the end of the data.
+    private static int[] blockTypes(byte[] compressed) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(compressed));
+        in.skipBytes(3);
+        int options = in.readUnsignedByte();
+        for (int i = 0; i < options; i++) {
+            in.readUnsignedByte();
+            Varint.read(in);
+        }
+        int[] types = new int[0];
+        int type;
+        while (in.available() > 0 && (type = in.readUnsignedByte()) != AdaptiveHuffmanOutputStream.BLOCK_END) {
+            types = Arrays.copyOf(types, types.length + 1);
+            types[types.length - 1] = type;
+            int rawLength = Varint.read(in);
+            in.skipBytes(type == AdaptiveHuffmanOutputStream.BLOCK_STORED ? rawLength + 1 : Varint.read(in));
+        }
+        return types;
+    }
+
+    // Hands out slices of data synchronously, as far as requested.
+    private static class ChunkPublisher implements Flow.Publisher<ByteBuffer> {
+        private final byte[] data;
+        private final int chunkSize;
+        private int next;
+        private long demand;
+        private boolean emitting;
+        private boolean completed;
+        int delivered;
+
+        ChunkPublisher(byte[] data, int chunkSize) {
+            this.data = data;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                    demand += n;
+                    if (emitting) return;
+                    emitting = true;
+                    while (demand > 0 && next < data.length) {
+                        demand--;
+                        int length = Math.min(chunkSize, data.length - next);
+                        ByteBuffer chunk = ByteBuffer.wrap(data, next, length);
+                        next += length;
+                        delivered++;
+                        subscriber.onNext(chunk);
+                    }
+                    if (next >= data.length && !completed) {
+                        completed = true;
+                        subscriber.onComplete();
+                    }
+                    emitting = false;
+                }
+
+                @Override
+                public void cancel() {
+                    next = data.length;
+                    completed = true;
+                }
+            });
+        }
+    }
+
+    private static class CollectingSubscriber implements Flow.Subscriber<ByteBuffer> {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final java.util.List<Integer> sizes = new java.util.ArrayList<>();
+        Flow.Subscription subscription;
+        boolean complete;
+        Throwable error;
+        private final long initialRequest;
+
+        CollectingSubscriber(long initialRequest) {
+            this.initialRequest = initialRequest;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(initialRequest);
+        }
+
+        @Override
+        public void onNext(ByteBuffer item) {
+            sizes.add(item.remaining());
+            bytes.write(item.array(), item.arrayOffset() + item.position(), item.remaining());
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+            complete = true;
+        }
+    }
+
+    private static CollectingSubscriber runFlow(HuffmanFlowProcessor processor, byte[] input, int chunkSize) {
+        CollectingSubscriber subscriber = new CollectingSubscriber(Long.MAX_VALUE);
+        processor.subscribe(subscriber);
+        new ChunkPublisher(input, chunkSize).subscribe(processor);
+        return subscriber;
+    }
+
+    public static void testFlowProcessor() throws IOException {
+        Random random = new Random(49);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 3000; i++) {
+            text.append("event ").append(random.nextInt(500)).append(i % 7 == 0 ? " error\n" : " ok\n");
+        }
+        byte[] data = text.toString().getBytes("UTF-8");
+
+        CollectingSubscriber compressed = runFlow(HuffmanFlowProcessor.compressor(
+                new HuffmanOptions().blockSize(4000), 1024), data, 100);
+        boolean sized = true;
+        for (int i = 0; i < compressed.sizes.size() - 1; i++) {
+            sized &= compressed.sizes.get(i) == 1024;
+        }
+        check("Flow compressor output decodes", data, decompress(compressed.bytes.toByteArray()));
+        if (compressed.complete && sized) {
+            System.out.println("Test passed: " + compressed.sizes.size() + " output buffers of 1024 bytes");
+        } else {
+            System.out.println("Test failed: flow compressor output buffers");
+        }
+
+        // Two members, the first with a flush point, fed in awkward slices.
+        ByteArrayOutputStream members = new ByteArrayOutputStream();
+        try (AdaptiveHuffmanOutputStream out = new AdaptiveHuffmanOutputStream(members, 4000)) {
+            out.write(data, 0, 5000);
+            out.flush();
+            out.write(data, 5000, 10000);
+        }
+        members.write(compress(new byte[0], 100));
+        members.write(compress(Arrays.copyOfRange(data, 15000, data.length), 3000));
+        for (int chunkSize : new int[] { 1, 7, 4096 }) {
+            CollectingSubscriber decoded = runFlow(HuffmanFlowProcessor.decompressor(4096),
+                    members.toByteArray(), chunkSize);
+            check("Flow decompressor with " + chunkSize + "-byte input buffers", data, decoded.bytes.toByteArray());
+        }
+
+        // A subscriber that takes one buffer and stops must stall the publisher.
+        ChunkPublisher publisher = new ChunkPublisher(data, 100);
+        HuffmanFlowProcessor processor = HuffmanFlowProcessor.compressor(new HuffmanOptions().blockSize(4000), 1024);
+        CollectingSubscriber slow = new CollectingSubscriber(1);
+        processor.subscribe(slow);
+        publisher.subscribe(processor);
+        int deliveredWhileStalled = publisher.delivered;
+        slow.subscription.request(Long.MAX_VALUE);
+        if (deliveredWhileStalled < 100 && slow.complete
+                && Arrays.equals(data, decompress(slow.bytes.toByteArray()))) {
+            System.out.println("Test passed: stalled subscriber held the publisher at "
+                    + deliveredWhileStalled + " of " + publisher.delivered + " input buffers");
+        } else {
+            System.out.println("Test failed: publisher ran ahead of a stalled subscriber ("
+                    + deliveredWhileStalled + " buffers)");
+        }
+
+        byte[] truncated = Arrays.copyOf(members.toByteArray(), members.size() - 5);
+        CollectingSubscriber broken = runFlow(HuffmanFlowProcessor.decompressor(4096), truncated, 512);
+        if (broken.error != null && !broken.complete) {
+            System.out.println("Test passed: truncated input reported to the subscriber");
+        } else {
+            System.out.println("Test failed: truncated input not signalled");
+        }
+    }
+
+    public static void main(String[] args) {
+        try {
+            System.out.println("Running Adaptive Huffman stream tests...\n");
+
+            System.out.println("\n=== Test 1: Text Round Trip ===");
+            testTextRoundTrip();
+
+            System.out.println("\n=== Test 2: Binary Round Trip ===");
+            testBinaryRoundTrip();
+
+            System.out.println("\n=== Test 3: Empty Stream ===");
+            testEmptyStream();
+
+            System.out.println("\n=== Test 4: Single Byte Writes and Reads ===");
+            testSingleByteWritesAndReads();
+
+            System.out.println("\n=== Test 5: Write After Finish ===");
+            testWriteAfterFinish();
+
+            System.out.println("\n=== Test 6: Flush Makes Data Available ===");
+            testFlushMakesDataAvailable();
+
+            System.out.println("\n=== Test 7: Flush Latency ===");
+            testFlushLatency();
+
+            System.out.println("\n=== Test 8: Concatenated Members ===");
+            testConcatenatedMembers();
+
+            System.out.println("\n=== Test 9: Append To File ===");
+            testAppendToFile();
+
+            System.out.println("\n=== Test 10: Incompressible Data Is Stored ===");
+            testIncompressibleDataIsStored();
+
+            System.out.println("\n=== Test 11: Flow Processor ===");
+            testFlowProcessor();
+
+            System.out.println("\n=== Test 12: Flushed Small Messages ===");
+            testFlushedSmallMessages();
+
+            System.out.println("\n=== Test 13: Compact Header ===");
+            testCompactHeader();
+
+            System.out.println("\n=== Test 14: Stored Blocks Decode By Copy ===");
+            testStoredBlocksDecodeByCopy();
+
+            System.out.println("\n=== Test 15: Corrupt Block Lengths ===");
+            testCorruptBlockLengths();
+
+            System.out.println("\nAll tests completed.");
+        } catch (Exception e) {
+            System.err.println("Error running tests: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,147 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+public class BatchCompressorTest {
+
+    private static Path createSourceTree() throws IOException {
+        Path root = Files.createTempDirectory("test_batch_src");
+        Files.createDirectories(root.resolve("conf/nested"));
+        for (int i = 0; i < 50; i++) {
+            StringBuilder config = new StringBuilder();
+            for (int j = 0; j <= i; j++) {
+                config.append("key.").append(j).append(" = value-").append(i * j).append('\n');
+            }
+            Files.write(root.resolve("conf/service" + i + ".properties"), config.toString().getBytes("UTF-8"));
+        }
+        Files.write(root.resolve("conf/nested/empty.txt"), new byte[0]);
+        Files.write(root.resolve("README"), "batch test tree\n".getBytes("UTF-8"));
+        return root;
+    }
+
+    private static void deleteTree(Path root) throws IOException {
+        try (Stream<Path> walk = Files.walk(root)) {
+            walk.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private static boolean roundTrips(Path input, Path compressed) throws IOException {
+        if (!Files.exists(compressed)) return false;
+        try (InputStream in = new AdaptiveHuffmanInputStream(new BufferedInputStream(Files.newInputStream(compressed)))) {
+            return Arrays.equals(Files.readAllBytes(input), in.readAllBytes());
+        }
+    }
+
+    public static void testBatchCompress() throws IOException {
+        Path source = createSourceTree();
+        Path output = Files.createTempDirectory("test_batch_out");
+        Path list = Files.createTempFile("test_batch", ".list");
+        Files.write(list, Arrays.asList(source.resolve("README").toString(), ""));
+
+        List<Path> inputs = BatchCompressor.expandInputs(Arrays.asList(
+                source.resolve("conf").toString(),
+                source + "/conf/service1?.properties",
+                "@" + list,
+                source.resolve("missing.txt").toString()));
+        // The glob matches files the directory already listed; each appears once.
+        boolean expanded = inputs.size() == 53;
+
+        BatchCompressor.Summary summary = BatchCompressor.compress(inputs, output.toString(), new HuffmanOptions(), 2, 2);
+        boolean allMatch = summary.failures == 1 && summary.files == 53;
+        long inputBytes = 0;
+        for (Path input : inputs) {
+            if (!Files.exists(input)) continue;
+            allMatch &= roundTrips(input, BatchCompressor.outputPath(output, input));
+            inputBytes += Files.size(input);
+        }
+        allMatch &= summary.inputBytes == inputBytes;
+        allMatch &= !Files.exists(BatchCompressor.outputPath(output, source.resolve("missing.txt")));
+
+        if (expanded && allMatch) {
+            System.out.println("Test passed: " + (summary.files - summary.failures) + " files round trip, missing file reported");
+        } else {
+            System.out.println("Test failed: batch compression (" + inputs.size() + " inputs, "
+                    + summary.failures + " failures)");
+        }
+        System.out.print(summary);
+
+        deleteTree(source);
+        deleteTree(output);
+        Files.delete(list);
+    }
+
+    public static void testOutputCollisions() throws IOException {
+        Path source = createSourceTree();
+        Path output = Files.createTempDirectory("test_batch_out");
+
+        // A relative path and the same path behind one more "..": outputPath
+        // drops leading ".." segments, so the two share an output whatever
+        // the working directory is. An unrelated absolute path does not.
+        Path readme = source.resolve("README");
+        Path relative = Paths.get("").toAbsolutePath().relativize(readme);
+        Path other = source.resolve("conf/service1.properties");
+        List<Path> inputs = Arrays.asList(relative, Paths.get("..").resolve(relative), other);
+        BatchCompressor.Summary summary = BatchCompressor.compress(inputs, output.toString(), new HuffmanOptions(), 2, 2);
+
+        if (summary.failures == 1 && roundTrips(readme, BatchCompressor.outputPath(output, relative))
+                && roundTrips(other, BatchCompressor.outputPath(output, other))) {
+            System.out.println("Test passed: colliding output path reported, first input kept");
+        } else {
+            System.out.println("Test failed: colliding output paths (" + summary.failures + " failures)");
+        }
+
+        deleteTree(source);
+        deleteTree(output);
+    }
+
+    public static void testLargeFile() throws IOException {
+        Path source = Files.createTempDirectory("test_batch_src");
+        Path output = Files.createTempDirectory("test_batch_out");
+
+        // Many blocks, streamed through the coder rather than read whole.
+        Path large = source.resolve("large.log");
+        Random random = new Random(47);
+        try (Writer writer = Files.newBufferedWriter(large)) {
+            for (int line = 0; line < 200000; line++) {
+                writer.write("request " + random.nextInt(1000) + " took " + random.nextInt(50) + " ms\n");
+            }
+        }
+        BatchCompressor.Summary summary = BatchCompressor.compress(Arrays.asList(large), output.toString(),
+                new HuffmanOptions().blockSize(16 * 1024), 1, 1);
+
+        if (summary.failures == 0 && summary.inputBytes == Files.size(large)
+                && summary.outputBytes == Files.size(BatchCompressor.outputPath(output, large))
+                && roundTrips(large, BatchCompressor.outputPath(output, large))) {
+            System.out.println("Test passed: " + summary.inputBytes + " bytes streamed to " + summary.outputBytes);
+        } else {
+            System.out.println("Test failed: large file (" + summary.failures + " failures)");
+        }
+
+        deleteTree(source);
+        deleteTree(output);
+    }
+
+    public static void main(String[] args) {
+        try {
+            System.out.println("Running batch compressor tests...\n");
+
+            System.out.println("\n=== Test 1: Batch Compress ===");
+            testBatchCompress();
+
+            System.out.println("\n=== Test 2: Output Collisions ===");
+            testOutputCollisions();
+
+            System.out.println("\n=== Test 3: Large File ===");
+            testLargeFile();
+
+            System.out.println("\nAll tests completed.");
+        } catch (IOException e) {
+            System.err.println("Error running tests: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,444 @@
+import java.io.*;
+import java.util.Arrays;
+import java.util.Random;
+
+public class CodecBenchmark {
+    private static final int ROUNDS = 3;
+
+    static byte[] textCorpus(int size) {
+        String[] words = {"the", "quick", "brown", "fox", "jumps", "over", "lazy", "dog", "and", "then",
+                "sleeps", "under", "a", "tree", "while", "birds", "sing", "songs", "of", "spring",
+                "INFO", "WARN", "request", "completed", "in", "ms", "user", "id", "session", "timeout"};
+        Random random = new Random(1);
+        StringBuilder text = new StringBuilder(size + 32);
+        while (text.length() < size) {
+            text.append(words[random.nextInt(words.length)]);
+            text.append(random.nextInt(12) == 0 ? ".\n" : " ");
+        }
+        return Arrays.copyOf(text.toString().getBytes(), size);
+    }
+
+    static byte[] binaryCorpus(int size) {
+        Random random = new Random(2);
+        ByteArrayOutputStream records = new ByteArrayOutputStream(size + 16);
+        DataOutputStream out = new DataOutputStream(records);
+        long timestamp = 1_700_000_000_000L;
+        int counter = 0;
+        try {
+            while (records.size() < size) {
+                timestamp += 1000 + random.nextInt(50);
+                counter += random.nextInt(4);
+                out.writeLong(timestamp);
+                out.writeInt(counter);
+                out.writeFloat(20.0f + random.nextInt(100) / 10.0f);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return Arrays.copyOf(records.toByteArray(), size);
+    }
+
+    // Low-entropy telemetry: mostly unchanged readings, small deltas otherwise.
+    static byte[] telemetryCorpus(int size) {
+        Random random = new Random(3);
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            int r = random.nextInt(64);
+            data[i] = (byte) (r < 56 ? 0 : r < 62 ? 1 : random.nextInt(16));
+        }
+        return data;
+    }
+
+    // Fixed-size records padded with zeros, as in sparse binary files.
+    static byte[] paddedCorpus(int size) {
+        Random random = new Random(4);
+        byte[] data = new byte[size];
+        for (int record = 0; record < size; record += 512) {
+            int used = 16 + random.nextInt(48);
+            for (int i = record; i < Math.min(size, record + used); i++) {
+                data[i] = (byte) random.nextInt(256);
+            }
+        }
+        return data;
+    }
+
+    static byte[] compress(byte[] data, HuffmanOptions options) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(data.length);
+        try (AdaptiveHuffmanOutputStream out = new AdaptiveHuffmanOutputStream(compressed, options)) {
+            out.write(data);
+        }
+        return compressed.toByteArray();
+    }
+
+    static byte[] decompress(byte[] compressed, int size) throws IOException {
+        try (AdaptiveHuffmanInputStream in = new AdaptiveHuffmanInputStream(new ByteArrayInputStream(compressed))) {
+            return in.readNBytes(size);
+        }
+    }
+
+    static void run(String label, byte[] data, HuffmanOptions options) throws IOException {
+        byte[] compressed = compress(data, options);
+        if (!Arrays.equals(data, decompress(compressed, data.length))) {
+            System.out.println(label + ": round trip FAILED");
+            return;
+        }
+
+        long encodeNanos = Long.MAX_VALUE;
+        long decodeNanos = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i++) {
+            long start = System.nanoTime();
+            compress(data, options);
+            encodeNanos = Math.min(encodeNanos, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            decompress(compressed, data.length);
+            decodeNanos = Math.min(decodeNanos, System.nanoTime() - start);
+        }
+
+        System.out.printf("%-28s ratio %.3f  encode %7.2f MB/s  decode %7.2f MB/s%n", label,
+                (double) compressed.length / data.length,
+                data.length / 1e6 / (encodeNanos / 1e9),
+                data.length / 1e6 / (decodeNanos / 1e9));
+    }
+
+    static void batchedUpdates(byte[] text, byte[] binary) throws IOException {
+        System.out.println("\n=== Batched tree updates (order-0) ===");
+        for (int batchSize : new int[] {1, 4, 16, 64, 256, 1024}) {
+            HuffmanOptions options = new HuffmanOptions().batchSize(batchSize);
+            run("text   batch=" + batchSize, text, options);
+            run("binary batch=" + batchSize, binary, options);
+        }
+    }
+
+    static void semiAdaptive(byte[] text, byte[] binary) throws IOException {
+        System.out.println("\n=== Semi-adaptive freeze ===");
+        run("text   adaptive", text, new HuffmanOptions());
+        run("binary adaptive", binary, new HuffmanOptions());
+        for (int freezeAfter : new int[] {1024, 4096, 16384}) {
+            for (boolean refreeze : new boolean[] {false, true}) {
+                HuffmanOptions options = new HuffmanOptions().mode(HuffmanOptions.Mode.SEMI_ADAPTIVE)
+                        .freezeAfter(freezeAfter).refreeze(refreeze);
+                String label = " freeze=" + freezeAfter + (refreeze ? " refreeze" : "");
+                run("text  " + label, text, options);
+                run("binary" + label, binary, options);
+            }
+        }
+    }
+
+    static void staticTwoPass(byte[] text, byte[] binary) throws IOException {
+        System.out.println("\n=== Static two-pass canonical ===");
+        for (int blockSize : new int[] {64 * 1024, 1 << 20}) {
+            HuffmanOptions options = new HuffmanOptions().mode(HuffmanOptions.Mode.STATIC).blockSize(blockSize);
+            run("text   static block=" + blockSize / 1024 + "K", text, options);
+            run("binary static block=" + blockSize / 1024 + "K", binary, options);
+        }
+    }
+
+    static void rangeCoding(byte[] text, byte[] binary, byte[] telemetry) throws IOException {
+        System.out.println("\n=== Range coder vs FGK ===");
+        HuffmanOptions range = new HuffmanOptions().mode(HuffmanOptions.Mode.RANGE);
+        HuffmanOptions batched = new HuffmanOptions().batchSize(1024);
+        run("text      fgk", text, new HuffmanOptions());
+        run("text      fgk batch=1024", text, batched);
+        run("text      range", text, range);
+        run("binary    fgk", binary, new HuffmanOptions());
+        run("binary    fgk batch=1024", binary, batched);
+        run("binary    range", binary, range);
+        run("telemetry fgk", telemetry, new HuffmanOptions());
+        run("telemetry fgk batch=1024", telemetry, batched);
+        run("telemetry range", telemetry, range);
+    }
+
+    static void lz77(byte[] text, byte[] binary) throws IOException {
+        System.out.println("\n=== LZ77 front end ===");
+        run("text   order-0", text, new HuffmanOptions());
+        run("binary order-0", binary, new HuffmanOptions());
+        for (int level : new int[] {1, 4, 6, 9}) {
+            HuffmanOptions options = new HuffmanOptions().mode(HuffmanOptions.Mode.LZ77).lzLevel(level);
+            run("text   lz77 level=" + level, text, options);
+            run("binary lz77 level=" + level, binary, options);
+        }
+    }
+
+    static void bwt(byte[] text, byte[] binary) throws IOException {
+        System.out.println("\n=== BWT + MTF ===");
+        run("text   order-0", text, new HuffmanOptions());
+        run("binary order-0", binary, new HuffmanOptions());
+        for (int blockSize : new int[] {64 * 1024, 1 << 20}) {
+            HuffmanOptions options = new HuffmanOptions().mode(HuffmanOptions.Mode.BWT).blockSize(blockSize);
+            run("text   bwt block=" + blockSize / 1024 + "K", text, options);
+            run("binary bwt block=" + blockSize / 1024 + "K", binary, options);
+        }
+    }
+
+    static void runLength(byte[] text, byte[] padded) throws IOException {
+        System.out.println("\n=== Run-length stage ===");
+        run("padded order-0", padded, new HuffmanOptions());
+        run("text   order-0", text, new HuffmanOptions());
+        for (int threshold : new int[] {2, 4, 8}) {
+            HuffmanOptions options = new HuffmanOptions().mode(HuffmanOptions.Mode.RLE).runThreshold(threshold);
+            run("padded rle threshold=" + threshold, padded, options);
+            run("text   rle threshold=" + threshold, text, options);
+        }
+    }
+
+    static void nibbleSplit(byte[] text, byte[] binary) throws IOException {
+        System.out.println("\n=== Nibble split vs byte tree ===");
+        HuffmanOptions nibble = new HuffmanOptions().mode(HuffmanOptions.Mode.NIBBLE);
+        run("text   byte tree", text, new HuffmanOptions());
+        run("text   nibble trees", text, nibble);
+        run("binary byte tree", binary, new HuffmanOptions());
+        run("binary nibble trees", binary, nibble);
+    }
+
+    // Single-threaded: any gain comes from overlapping independent chains.
+    static void interleaved(byte[] text, byte[] binary) throws IOException {
+        System.out.println("\n=== Interleaved streams ===");
+        for (int streams : new int[] {1, 2, 4, 8}) {
+            HuffmanOptions options = new HuffmanOptions().mode(HuffmanOptions.Mode.INTERLEAVED).streams(streams);
+            run("text   streams=" + streams, text, options);
+            run("binary streams=" + streams, binary, options);
+        }
+    }
+
+    static void wordTokens(byte[] text) throws IOException {
+        System.out.println("\n=== Word tokens ===");
+        run("text   byte tree", text, new HuffmanOptions());
+        run("text   word tokens", text, new HuffmanOptions().mode(HuffmanOptions.Mode.WORD));
+    }
+
+    // binaryCorpus is 16-byte records: long timestamp, int counter, float.
+    static void recordTransforms(byte[] binary) throws IOException {
+        System.out.println("\n=== Record transforms (batch=1024) ===");
+        run("binary none", binary, new HuffmanOptions().batchSize(1024));
+        run("binary delta width=4", binary, new HuffmanOptions().batchSize(1024)
+                .transform(HuffmanOptions.Transform.DELTA, 4));
+        run("binary xor width=4", binary, new HuffmanOptions().batchSize(1024)
+                .transform(HuffmanOptions.Transform.XOR, 4));
+        run("binary xor width=16", binary, new HuffmanOptions().batchSize(1024)
+                .transform(HuffmanOptions.Transform.XOR, 16));
+        run("binary shuffle width=16", binary, new HuffmanOptions().batchSize(1024)
+                .transform(HuffmanOptions.Transform.SHUFFLE, 16));
+        // Shuffling leaves order-0 statistics unchanged; it pays off with context or matches.
+        run("binary lz77", binary, new HuffmanOptions().mode(HuffmanOptions.Mode.LZ77));
+        run("binary shuffle=16 lz77", binary, new HuffmanOptions().mode(HuffmanOptions.Mode.LZ77)
+                .transform(HuffmanOptions.Transform.SHUFFLE, 16));
+    }
+
+    private static int varintBytes(int value) {
+        return value < 1 << 7 ? 1 : value < 1 << 14 ? 2 : value < 1 << 21 ? 3 : value < 1 << 28 ? 4 : 5;
+    }
+
+    // Many independent small streams, as for request/response payloads. The
+    // fixed header and block framing are left out of the coded size.
+    static void shortMessages(byte[] text) throws IOException {
+        System.out.println("\n=== Short messages (one stream each) ===");
+        int empty = compress(new byte[0], new HuffmanOptions()).length;
+        for (int length : new int[] {32, 128, 512, 2048}) {
+            int messages = Math.min(2000, text.length / length);
+            long input = 0;
+            long coded = 0;
+            for (int m = 0; m < messages; m++) {
+                byte[] message = Arrays.copyOfRange(text, m * length, (m + 1) * length);
+                input += length;
+                // What follows the block type and raw length: the coded length, then the codes.
+                int payload = compress(message, new HuffmanOptions()).length - empty - 1 - varintBytes(length);
+                coded += payload - varintBytes(payload - 1);
+            }
+            System.out.printf("messages of %4d bytes: %6d messages, coded %.1f bytes/message, ratio %.3f%n",
+                    length, messages, (double) coded / messages, (double) coded / input);
+        }
+    }
+
+    // Message API throughput with a fresh codec per message vs the pool.
+    static void messagePool(byte[] text) throws IOException {
+        System.out.println("\n=== Message codecs: fresh vs pooled ===");
+        java.lang.management.ThreadMXBean bean = java.lang.management.ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        long threadId = Thread.currentThread().getId();
+        ByteArrayOutputStream sink = new ByteArrayOutputStream(1 << 20);
+        for (int length : new int[] {64, 512}) {
+            int messages = Math.min(4000, text.length / length);
+            for (boolean pooled : new boolean[] {false, true}) {
+                long best = Long.MAX_VALUE;
+                long allocated = 0;
+                for (int round = 0; round < ROUNDS; round++) {
+                    long bytesBefore = threads.getThreadAllocatedBytes(threadId);
+                    long start = System.nanoTime();
+                    for (int m = 0; m < messages; m++) {
+                        sink.reset();
+                        if (pooled) {
+                            AdaptiveHuffman.compressMessage(text, m * length, length, sink);
+                        } else {
+                            new MessageCodec().compress(text, m * length, length, sink);
+                        }
+                    }
+                    best = Math.min(best, System.nanoTime() - start);
+                    allocated = threads.getThreadAllocatedBytes(threadId) - bytesBefore;
+                }
+                System.out.printf("%4d-byte messages %-7s %8.0f msg/s  %7d bytes allocated/msg%n", length,
+                        pooled ? "pooled" : "fresh", messages / (best / 1e9), allocated / messages);
+            }
+        }
+    }
+
+    // Per-message latency percentiles for RPC-sized payloads, from an empty
+    // tree and from trained dictionaries, plus the cost of the tree reset alone.
+    static void messageLatency(byte[] text) throws IOException {
+        System.out.println("\n=== Message latency: empty tree vs dictionary ===");
+        Random random = new Random(50);
+        java.util.List<byte[]> samples = new java.util.ArrayList<>();
+        for (int offset = 0; offset + 2000 <= text.length / 2; offset += 2000) {
+            samples.add(Arrays.copyOfRange(text, offset, offset + 2000));
+        }
+        byte[][] messages = new byte[2000][];
+        for (int m = 0; m < messages.length; m++) {
+            int length = 100 + random.nextInt(1901);
+            int offset = text.length / 2 + random.nextInt(text.length / 2 - length);
+            messages[m] = Arrays.copyOfRange(text, offset, offset + length);
+        }
+
+        HuffmanTree tree = new HuffmanTree();
+        HuffmanTree.Template template = MessageDictionary.train(samples).getTemplate();
+        for (boolean fromTemplate : new boolean[] {false, true}) {
+            int resets = 200000;
+            long best = Long.MAX_VALUE;
+            for (int round = 0; round < ROUNDS; round++) {
+                long start = System.nanoTime();
+                for (int i = 0; i < resets; i++) {
+                    if (fromTemplate) tree.reset(template); else tree.reset();
+                }
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            System.out.printf("reset %-22s %8.0f ns%n", fromTemplate ? "from template (" + template.getNodeCount()
+                    + " nodes)" : "to empty", (double) best / resets);
+        }
+
+        MessageCodec codec = new MessageCodec();
+        ByteArrayOutputStream sink = new ByteArrayOutputStream(1 << 16);
+        byte[] buffer = new byte[4096];
+        for (int weight : new int[] {0, 256, 1024, 4096}) {
+            HuffmanTree.Template start = weight == 0 ? null : MessageDictionary.train(samples, weight).getTemplate();
+            long[] encode = new long[messages.length];
+            long[] decode = new long[messages.length];
+            long rawBytes = 0;
+            long codedBytes = 0;
+            for (int round = 0; round < ROUNDS; round++) {
+                rawBytes = 0;
+                codedBytes = 0;
+                for (int m = 0; m < messages.length; m++) {
+                    sink.reset();
+                    long t0 = System.nanoTime();
+                    codec.compress(messages[m], 0, messages[m].length, sink, start);
+                    long t1 = System.nanoTime();
+                    int length = codec.decompress(new ByteArrayInputStream(sink.toByteArray()), buffer, 0,
+                            buffer.length, start);
+                    long t2 = System.nanoTime();
+                    if (length != messages[m].length) {
+                        System.out.println("message round trip FAILED");
+                        return;
+                    }
+                    encode[m] = t1 - t0;
+                    decode[m] = t2 - t1;
+                    rawBytes += messages[m].length;
+                    codedBytes += sink.size();
+                }
+            }
+            Arrays.sort(encode);
+            Arrays.sort(decode);
+            System.out.printf("%-16s ratio %.3f  encode p50 %6.1f p90 %6.1f p99 %6.1f us"
+                    + "  decode p50 %6.1f p90 %6.1f p99 %6.1f us%n",
+                    weight == 0 ? "empty tree" : "dictionary " + weight, (double) codedBytes / rawBytes,
+                    percentile(encode, 50), percentile(encode, 90), percentile(encode, 99),
+                    percentile(decode, 50), percentile(decode, 90), percentile(decode, 99));
+        }
+    }
+
+    private static double percentile(long[] sortedNanos, int percent) {
+        return sortedNanos[Math.min(sortedNanos.length - 1, sortedNanos.length * percent / 100)] / 1e3;
+    }
+
+    // The Flow processors against the blocking streams on the same data.
+    static void flowProcessor(byte[] text) throws IOException {
+        System.out.println("\n=== Flow processor vs streams ===");
+        byte[] compressed = compress(text, new HuffmanOptions());
+        if (!Arrays.equals(text, runFlow(HuffmanFlowProcessor.decompressor(HuffmanFlowProcessor.DEFAULT_BUFFER_SIZE),
+                runFlow(HuffmanFlowProcessor.compressor(new HuffmanOptions(), HuffmanFlowProcessor.DEFAULT_BUFFER_SIZE),
+                        text)))) {
+            System.out.println("flow round trip FAILED");
+            return;
+        }
+        long[] best = { Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE };
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            compress(text, new HuffmanOptions());
+            best[0] = Math.min(best[0], System.nanoTime() - start);
+            start = System.nanoTime();
+            decompress(compressed, text.length);
+            best[1] = Math.min(best[1], System.nanoTime() - start);
+            start = System.nanoTime();
+            runFlow(HuffmanFlowProcessor.compressor(new HuffmanOptions(), HuffmanFlowProcessor.DEFAULT_BUFFER_SIZE), text);
+            best[2] = Math.min(best[2], System.nanoTime() - start);
+            start = System.nanoTime();
+            runFlow(HuffmanFlowProcessor.decompressor(HuffmanFlowProcessor.DEFAULT_BUFFER_SIZE), compressed);
+            best[3] = Math.min(best[3], System.nanoTime() - start);
+        }
+        System.out.printf("%-28s encode %7.2f MB/s  decode %7.2f MB/s%n", "streams",
+                text.length / 1e6 / (best[0] / 1e9), text.length / 1e6 / (best[1] / 1e9));
+        System.out.printf("%-28s encode %7.2f MB/s  decode %7.2f MB/s%n", "flow processor",
+                text.length / 1e6 / (best[2] / 1e9), text.length / 1e6 / (best[3] / 1e9));
+    }
+
+    // Feeds data through a processor in 8 KB buffers via a SubmissionPublisher.
+    private static byte[] runFlow(HuffmanFlowProcessor processor, byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        java.util.concurrent.CompletableFuture<Void> finished = new java.util.concurrent.CompletableFuture<>();
+        processor.subscribe(new java.util.concurrent.Flow.Subscriber<java.nio.ByteBuffer>() {
+            public void onSubscribe(java.util.concurrent.Flow.Subscription s) { s.request(Long.MAX_VALUE); }
+            public void onNext(java.nio.ByteBuffer item) { out.write(item.array(), item.position(), item.remaining()); }
+            public void onError(Throwable t) { finished.completeExceptionally(t); }
+            public void onComplete() { finished.complete(null); }
+        });
+        try (java.util.concurrent.SubmissionPublisher<java.nio.ByteBuffer> publisher =
+                     new java.util.concurrent.SubmissionPublisher<>()) {
+            publisher.subscribe(processor);
+            for (int offset = 0; offset < data.length; offset += 8192) {
+                publisher.submit(java.nio.ByteBuffer.wrap(data, offset, Math.min(8192, data.length - offset)));
+            }
+        }
+        finished.join();
+        return out.toByteArray();
+    }
+
+    // Usage: java CodecBenchmark [corpusSize] [section...]; no sections runs all.
+    private static boolean wants(String[] args, String section) {
+        if (args.length <= 1) return true;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals(section)) return true;
+        }
+        return false;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 256 * 1024;
+        byte[] text = textCorpus(size);
+        byte[] binary = binaryCorpus(size);
+        System.out.println("Corpus size: " + size + " bytes");
+
+        if (wants(args, "batch")) batchedUpdates(text, binary);
+        if (wants(args, "semi")) semiAdaptive(text, binary);
+        if (wants(args, "static")) staticTwoPass(text, binary);
+        if (wants(args, "range")) rangeCoding(text, binary, telemetryCorpus(size));
+        if (wants(args, "lz77")) lz77(text, binary);
+        if (wants(args, "bwt")) bwt(text, binary);
+        if (wants(args, "rle")) runLength(text, paddedCorpus(size));
+        if (wants(args, "nibble")) nibbleSplit(text, binary);
+        if (wants(args, "interleaved")) interleaved(text, binary);
+        if (wants(args, "word")) wordTokens(text);
+        if (wants(args, "transform")) recordTransforms(binary);
+        if (wants(args, "messages")) shortMessages(text);
+        if (wants(args, "pool")) messagePool(text);
+        if (wants(args, "latency")) messageLatency(text);
+        if (wants(args, "flow")) flowProcessor(text);
+    }
+}
@@ -0,0 +1,1094 @@
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class CodingModesTest {
+
+    private static byte[] sampleText() throws IOException {
+        StringBuilder text = new StringBuilder();
+        String[] words = {"the", "quick", "brown", "fox", "jumps", "over", "lazy", "dog", "and", "then",
+                "sleeps", "under", "a", "tree", "while", "birds", "sing", "songs", "of", "spring"};
+        Random random = new Random(11);
+        for (int i = 0; i < 6000; i++) {
+            text.append(words[random.nextInt(words.length)]);
+            text.append(i % 12 == 11 ? ".\n" : " ");
+        }
+        return text.toString().getBytes("UTF-8");
+    }
+
+    private static byte[] compress(byte[] data, HuffmanOptions options) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (AdaptiveHuffmanOutputStream out = new AdaptiveHuffmanOutputStream(compressed, options)) {
+            out.write(data);
+        }
+        return compressed.toByteArray();
+    }
+
+    private static byte[] decompress(byte[] compressed) throws IOException {
+        try (AdaptiveHuffmanInputStream in = new AdaptiveHuffmanInputStream(new ByteArrayInputStream(compressed))) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static void check(String name, byte[] expected, byte[] actual) {
+        if (Arrays.equals(expected, actual)) {
+            System.out.println("Test passed: " + name);
+        } else {
+            System.out.println("Test failed: " + name + " (expected " + expected.length
+                    + " bytes, got " + actual.length + ")");
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) {
+            if (sb.length() > 0) sb.append(' ');
+            sb.append(String.format("%02X", b & 0xFF));
+        }
+        return sb.toString();
+    }
+
+    public static void testOrder1RoundTrip() throws IOException {
+        byte[] data = sampleText();
+        byte[] order0 = compress(data, new HuffmanOptions());
+        byte[] order1 = compress(data, new HuffmanOptions().mode(HuffmanOptions.Mode.ORDER1));
+
+        check("Order-1 round trip", data, decompress(order1));
+        System.out.println("Original size: " + data.length + " bytes");
+        System.out.println("Order-0 size: " + order0.length + " bytes");
+        System.out.println("Order-1 size: " + order1.length + " bytes");
+        if (order1.length < order0.length) {
+            System.out.println("Test passed: order-1 beats order-0 on text");
+        } else {
+            System.out.println("Test failed: order-1 should beat order-0 on text");
+        }
+    }
+
+    public static void testOrder1PoolEviction() throws IOException {
+        byte[] data = sampleText();
+        HuffmanOptions options = new HuffmanOptions()
+                .mode(HuffmanOptions.Mode.ORDER1)
+                .contextPoolSize(4)
+                .blockSize(8192);
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        AdaptiveHuffmanOutputStream out = new AdaptiveHuffmanOutputStream(compressed, options);
+        out.write(data);
+        out.close();
+
+        AdaptiveHuffmanInputStream in = new AdaptiveHuffmanInputStream(
+                new ByteArrayInputStream(compressed.toByteArray()));
+        check("Order-1 round trip with evictions", data, in.readAllBytes());
+        in.close();
+
+        ContextTreePool encoderPool = out.getContextTreePool();
+        ContextTreePool decoderPool = in.getContextTreePool();
+        System.out.println("Encoder pool: " + encoderPool);
+        System.out.println("Decoder pool: " + decoderPool);
+        if (encoderPool.getEvictions() > 0 && encoderPool.size() <= 4
+                && encoderPool.getHits() == decoderPool.getHits()
+                && encoderPool.getEvictions() == decoderPool.getEvictions()) {
+            System.out.println("Test passed: pools bounded and identical on both sides");
+        } else {
+            System.out.println("Test failed: pool counters differ or pool not bounded");
+        }
+
+        // Misses take over the evicted tree, or one kept by clear(), reset.
+        ContextTreePool pool = new ContextTreePool(2);
+        HuffmanTree first = pool.get(1);
+        first.update('a');
+        HuffmanTree second = pool.get(2);
+        second.update('b');
+        HuffmanTree reused = pool.get(3);
+        pool.clear();
+        HuffmanTree spare = pool.get(4);
+        if (reused == first && reused.getRoot() == reused.getNYT()
+                && (spare == reused || spare == second) && pool.getEvictions() == 1) {
+            System.out.println("Test passed: evicted and cleared trees reused");
+        } else {
+            System.out.println("Test failed: pool allocated new trees");
+        }
+    }
+
+    public static void testAutoModePicksPerBlock() throws IOException {
+        byte[] text = sampleText();
+        byte[] random = new byte[32 * 1024];
+        new Random(5).nextBytes(random);
+
+        ByteArrayOutputStream input = new ByteArrayOutputStream();
+        input.write(text, 0, 16 * 1024);
+        input.write(random);
+        input.write(text, 0, 16 * 1024);
+        byte[] data = input.toByteArray();
+
+        HuffmanOptions options = new HuffmanOptions().mode(HuffmanOptions.Mode.AUTO).blockSize(16 * 1024);
+        byte[] compressed = compress(data, options);
+        check("Auto mode round trip", data, decompress(compressed));
+
+        int[] types = blockTypes(compressed);
+        System.out.println("Block types: " + Arrays.toString(types));
+        if (types[0] == AdaptiveHuffmanOutputStream.BLOCK_ORDER1
+                && types[1] == AdaptiveHuffmanOutputStream.BLOCK_STORED
+                && types[2] == AdaptiveHuffmanOutputStream.BLOCK_STORED) {
+            System.out.println("Test passed: auto mode picked order-1 for text and stored for random data");
+        } else {
+            System.out.println("Test failed: unexpected block types");
+        }
+        System.out.println("Original size: " + data.length + " bytes");
+        System.out.println("Compressed size: " + compressed.length + " bytes");
+
+        // The stored blocks in between leave the order-1 model alone, so the
+        // repeated text codes smaller the second time.
+        int[] lengths = blockCodedLengths(compressed);
+        if (types[3] == AdaptiveHuffmanOutputStream.BLOCK_ORDER1 && lengths[3] < lengths[0]) {
+            System.out.println("Test passed: model kept across stored blocks (" + lengths[0] + " then "
+                    + lengths[3] + " bytes for the same text)");
+        } else {
+            System.out.println("Test failed: model lost across stored blocks (" + lengths[0] + " then "
+                    + lengths[3] + " bytes)");
+        }
+    }
+
+    public static void testBatchedUpdates() throws IOException {
+        byte[] data = sampleText();
+        byte[] exact = compress(data, new HuffmanOptions());
+        for (int batchSize : new int[] {2, 16, 256}) {
+            HuffmanOptions options = new HuffmanOptions().batchSize(batchSize).batchThreshold(batchSize / 2 + 1);
+            byte[] batched = compress(data, options);
+            check("Batched updates, batch size " + batchSize, data, decompress(batched));
+            System.out.println("Exact size: " + exact.length + " bytes, batched size: " + batched.length + " bytes");
+        }
+    }
+
+    public static void testSemiAdaptiveFreeze() throws IOException {
+        byte[] data = sampleText();
+        byte[] tail = "symbols first seen after the freeze: {[0123456789]}".getBytes("UTF-8");
+        ByteArrayOutputStream input = new ByteArrayOutputStream();
+        input.write(data);
+        input.write(tail);
+        byte[] all = input.toByteArray();
+
+        byte[] adaptive = compress(all, new HuffmanOptions());
+        for (boolean refreeze : new boolean[] {false, true}) {
+            HuffmanOptions options = new HuffmanOptions()
+                    .mode(HuffmanOptions.Mode.SEMI_ADAPTIVE)
+                    .freezeAfter(2000)
+                    .refreeze(refreeze)
+                    .blockSize(4096);
+            byte[] frozen = compress(all, options);
+            check("Semi-adaptive round trip, refreeze=" + refreeze, all, decompress(frozen));
+            System.out.println("Adaptive size: " + adaptive.length + " bytes, semi-adaptive size: "
+                    + frozen.length + " bytes");
+        }
+
+        // Counts are halved at the limit instead of overflowing; a low limit
+        // stands in for the 2^30 of a real stream.
+        SemiAdaptiveCoder encoding = new SemiAdaptiveCoder(500, true, 1000);
+        SemiAdaptiveCoder decoding = new SemiAdaptiveCoder(500, true, 1000);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Encoder.BitOutputStream bits = new Encoder.BitOutputStream(bytes);
+        Encoder encoder = new Encoder(bits);
+        for (int offset = 0; offset + 4096 <= all.length; offset += 4096) {
+            encoding.encodeBlock(encoder, Arrays.copyOfRange(all, offset, offset + 4096), 4096);
+            bits.padToByte();
+        }
+        Decoder.BitInputStream bitsIn = new Decoder.BitInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        Decoder decoder = new Decoder(bitsIn);
+        byte[] decoded = new byte[all.length / 4096 * 4096];
+        byte[] block = new byte[4096];
+        for (int offset = 0; offset < decoded.length; offset += 4096) {
+            decoding.decodeBlock(decoder, block, 4096);
+            System.arraycopy(block, 0, decoded, offset, 4096);
+            bitsIn.alignToByte();
+        }
+        int largest = 0;
+        for (int symbol = 0; symbol < 256; symbol++) {
+            largest = Math.max(largest, encoding.getCount(symbol));
+        }
+        check("Semi-adaptive round trip with halved counts", Arrays.copyOf(all, decoded.length), decoded);
+        if (largest < 1000 && encoding.getCount(' ') == decoding.getCount(' ')) {
+            System.out.println("Test passed: counts stay below the limit (largest " + largest + ")");
+        } else {
+            System.out.println("Test failed: counts not bounded (largest " + largest + ")");
+        }
+    }
+
+    public static void testCanonicalCodeShared() throws Exception {
+        int[] weights = new int[257];
+        Random random = new Random(3);
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = 1 + random.nextInt(1000) * random.nextInt(1000);
+        }
+        CanonicalCode code = CanonicalCode.fromWeights(weights, SemiAdaptiveCoder.FROZEN_CODE_LENGTH);
+
+        int[] symbols = new int[5000];
+        for (int i = 0; i < symbols.length; i++) {
+            symbols[i] = random.nextInt(257);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Encoder.BitOutputStream bits = new Encoder.BitOutputStream(bytes);
+        Encoder encoder = new Encoder(bits);
+        for (int symbol : symbols) {
+            code.write(encoder, symbol);
+        }
+        bits.padToByte();
+        byte[] encoded = bytes.toByteArray();
+
+        // One immutable code, several decoder threads.
+        boolean[] ok = new boolean[4];
+        Thread[] threads = new Thread[ok.length];
+        for (int t = 0; t < threads.length; t++) {
+            int index = t;
+            threads[t] = new Thread(() -> {
+                try {
+                    Decoder decoder = new Decoder(new Decoder.BitInputStream(new ByteArrayInputStream(encoded)));
+                    boolean match = true;
+                    for (int symbol : symbols) {
+                        match &= code.read(decoder) == symbol;
+                    }
+                    ok[index] = match;
+                } catch (IOException e) {
+                    ok[index] = false;
+                }
+            });
+            threads[t].start();
+        }
+        boolean allOk = true;
+        for (int t = 0; t < threads.length; t++) {
+            threads[t].join();
+            allOk &= ok[t];
+        }
+        if (allOk) {
+            System.out.println("Test passed: canonical code shared across decoder threads");
+        } else {
+            System.out.println("Test failed: shared canonical code decoded incorrectly");
+        }
+    }
+
+    public static void testStaticTwoPass() throws IOException {
+        byte[] text = sampleText();
+        byte[] single = new byte[5000];
+        Arrays.fill(single, (byte) 'x');
+        byte[] skewed = new byte[40000];
+        Random random = new Random(9);
+        for (int i = 0; i < skewed.length; i++) {
+            // Geometric distribution: long codes for rare symbols exercise the table fallback.
+            int symbol = 0;
+            while (symbol < 255 && random.nextInt(3) != 0) symbol++;
+            skewed[i] = (byte) symbol;
+        }
+
+        HuffmanOptions options = new HuffmanOptions().mode(HuffmanOptions.Mode.STATIC);
+        byte[] adaptive = compress(text, new HuffmanOptions());
+        byte[] twoPass = compress(text, options);
+        check("Static round trip on text", text, decompress(twoPass));
+        check("Static round trip on a single symbol", single, decompress(compress(single, options)));
+        check("Static round trip on skewed data", skewed, decompress(compress(skewed, options)));
+        check("Static round trip with small blocks", text,
+                decompress(compress(text, new HuffmanOptions().mode(HuffmanOptions.Mode.STATIC).blockSize(1000))));
+        System.out.println("Adaptive size: " + adaptive.length + " bytes, static size: " + twoPass.length + " bytes");
+    }
+
+    public static void testRangeCoder() throws IOException {
+        byte[] text = sampleText();
+        byte[] telemetry = new byte[50000];
+        Random random = new Random(11);
+        for (int i = 0; i < telemetry.length; i++) {
+            telemetry[i] = (byte) (random.nextInt(20) == 0 ? random.nextInt(4) + 1 : 0);
+        }
+
+        HuffmanOptions options = new HuffmanOptions().mode(HuffmanOptions.Mode.RANGE).blockSize(8192);
+        check("Range round trip on text", text, decompress(compress(text, options)));
+        byte[] ranged = compress(telemetry, options);
+        check("Range round trip on skewed data", telemetry, decompress(ranged));
+
+        // Order-0 Huffman can't go below 1 bit per symbol; entropy here is about 0.4.
+        byte[] huffman = compress(telemetry, new HuffmanOptions().blockSize(8192));
+        if (ranged.length < huffman.length * 2 / 3) {
+            System.out.println("Test passed: range coder beats Huffman on skewed data");
+        } else {
+            System.out.println("Test failed: range " + ranged.length + " bytes vs Huffman " + huffman.length);
+        }
+        System.out.println("Huffman size: " + huffman.length + " bytes, range size: " + ranged.length + " bytes");
+
+        FrequencyModel model = new FrequencyModel(300);
+        for (int i = 0; i < 100000; i++) {
+            model.update(random.nextInt(300));
+        }
+        boolean consistent = model.getTotal() <= FrequencyModel.MAX_TOTAL;
+        for (int symbol = 0; symbol < 300; symbol++) {
+            int cumulative = model.getCumulative(symbol);
+            consistent &= model.findSymbol(cumulative) == symbol
+                    && model.findSymbol(cumulative + model.getFrequency(symbol) - 1) == symbol;
+        }
+        if (consistent) {
+            System.out.println("Test passed: Fenwick lookups consistent after rescaling");
+        } else {
+            System.out.println("Test failed: Fenwick lookups inconsistent");
+        }
+    }
+
+    public static void testLZ77() throws IOException {
+        StringBuilder log = new StringBuilder();
+        Random random = new Random(5);
+        for (int i = 0; i < 3000; i++) {
+            log.append("2024-03-01 10:").append(10 + i % 50).append(" INFO request ")
+                    .append(random.nextInt(500)).append(" completed in ").append(random.nextInt(90)).append(" ms\n");
+        }
+        byte[] text = log.toString().getBytes("UTF-8");
+        byte[] runs = new byte[70000];
+        Arrays.fill(runs, (byte) 'a');
+
+        byte[] huffman = compress(text, new HuffmanOptions());
+        for (int level : new int[] {1, 4, 9}) {
+            HuffmanOptions options = new HuffmanOptions().mode(HuffmanOptions.Mode.LZ77).lzLevel(level).blockSize(16384);
+            byte[] compressed = compress(text, options);
+            check("LZ77 level " + level + " round trip", text, decompress(compressed));
+            System.out.println("Level " + level + ": " + compressed.length + " bytes (order-0: " + huffman.length + ")");
+        }
+        check("LZ77 long overlapping runs", runs,
+                decompress(compress(runs, new HuffmanOptions().mode(HuffmanOptions.Mode.LZ77))));
+
+        // Small flushed blocks still find matches in earlier blocks.
+        ByteArrayOutputStream flushed = new ByteArrayOutputStream();
+        try (AdaptiveHuffmanOutputStream out = new AdaptiveHuffmanOutputStream(flushed,
+                new HuffmanOptions().mode(HuffmanOptions.Mode.LZ77))) {
+            for (int offset = 0; offset < text.length; offset += 100) {
+                out.write(text, offset, Math.min(100, text.length - offset));
+                out.flush();
+            }
+        }
+        check("LZ77 window across flushed blocks", text, decompress(flushed.toByteArray()));
+        if (flushed.size() < huffman.length) {
+            System.out.println("Test passed: LZ77 beats order-0 on logs");
+        } else {
+            System.out.println("Test failed: flushed LZ77 " + flushed.size() + " bytes vs order-0 " + huffman.length);
+        }
+
+        boolean bucketsOk = true;
+        for (int value = 0; value < LZ77Coder.WINDOW_SIZE; value++) {
+            int bucket = BucketCode.bucket(value);
+            int offset = value - BucketCode.base(bucket);
+            bucketsOk &= offset >= 0 && offset < 1 << BucketCode.extraBits(bucket);
+        }
+        if (bucketsOk) {
+            System.out.println("Test passed: bucket codes cover the window");
+        } else {
+            System.out.println("Test failed: bucket codes");
+        }
+    }
+
+    public static void testBWT() throws IOException {
+        byte[] text = sampleText();
+        HuffmanOptions options = new HuffmanOptions().mode(HuffmanOptions.Mode.BWT);
+        byte[] bwt = compress(text, options);
+        check("BWT round trip on text", text, decompress(bwt));
+        System.out.println("Order-0 size: " + compress(text, new HuffmanOptions()).length
+                + " bytes, BWT size: " + bwt.length + " bytes");
+
+        Random random = new Random(13);
+        byte[] binary = new byte[20000];
+        random.nextBytes(binary);
+        byte[] runs = new byte[30000];
+        for (int i = 0; i < runs.length; i++) {
+            runs[i] = (byte) (i / 1000 % 3);
+        }
+        check("BWT round trip on random bytes", binary, decompress(compress(binary, options)));
+        check("BWT round trip on long runs", runs, decompress(compress(runs, options)));
+        check("BWT round trip on one byte", new byte[] {42}, decompress(compress(new byte[] {42}, options)));
+
+        // Several segments per block, transformed in parallel.
+        byte[] large = new byte[BWTCoder.SEGMENT_SIZE * 2 + 777];
+        for (int i = 0; i < large.length; i++) {
+            large[i] = text[(i * 7 + i / 5000) % text.length];
+        }
+        check("BWT round trip across segments", large,
+                decompress(compress(large, new HuffmanOptions().mode(HuffmanOptions.Mode.BWT).blockSize(1 << 20))));
+
+        boolean sorted = true;
+        for (int trial = 0; trial < 200 && sorted; trial++) {
+            int n = 1 + random.nextInt(300);
+            int alphabet = 1 + random.nextInt(trial % 2 == 0 ? 3 : 255);
+            int[] textSymbols = new int[n + 1];
+            for (int i = 0; i < n; i++) {
+                textSymbols[i] = 1 + random.nextInt(alphabet);
+            }
+            int[] sa = new int[n + 1];
+            SuffixArray.build(textSymbols, sa, n + 1, alphabet + 1);
+            for (int i = 1; i <= n && sorted; i++) {
+                sorted = compareSuffixes(textSymbols, sa[i - 1], sa[i]) < 0;
+            }
+        }
+        if (sorted) {
+            System.out.println("Test passed: SA-IS matches naive suffix order");
+        } else {
+            System.out.println("Test failed: SA-IS produced an unsorted suffix array");
+        }
+    }
+
+    public static void testRunLength() throws IOException {
+        // Padded records: short payloads followed by long zero runs.
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        Random random = new Random(17);
+        for (int i = 0; i < 200; i++) {
+            byte[] payload = ("record-" + i + ";value=" + random.nextInt(1000)).getBytes("UTF-8");
+            records.write(payload);
+            records.write(new byte[1024 - payload.length]);
+            records.write(new byte[] {7, 7, 7, 7});
+        }
+        byte[] data = records.toByteArray();
+
+        HuffmanOptions options = new HuffmanOptions().mode(HuffmanOptions.Mode.RLE);
+        byte[] rle = compress(data, options);
+        check("RLE round trip on padded records", data, decompress(rle));
+        check("RLE round trip with threshold 2", data,
+                decompress(compress(data, new HuffmanOptions().mode(HuffmanOptions.Mode.RLE).runThreshold(2))));
+        byte[] text = sampleText();
+        check("RLE round trip on text", text, decompress(compress(text, options)));
+        byte[] zeros = new byte[200000];
+        check("RLE run across blocks", zeros, decompress(compress(zeros, options.blockSize(65536))));
+
+        byte[] order0 = compress(data, new HuffmanOptions());
+        if (rle.length < order0.length / 4) {
+            System.out.println("Test passed: runs coded as length tokens");
+        } else {
+            System.out.println("Test failed: RLE size " + rle.length + " vs order-0 " + order0.length);
+        }
+        System.out.println("Order-0 size: " + order0.length + " bytes, RLE size: " + rle.length + " bytes");
+    }
+
+    public static void testNibbleSplit() throws IOException {
+        byte[] text = sampleText();
+        byte[] binary = new byte[30000];
+        new Random(19).nextBytes(binary);
+        for (int i = 0; i < binary.length; i += 3) {
+            binary[i] = (byte) (i & 0x0F);
+        }
+        HuffmanOptions options = new HuffmanOptions().mode(HuffmanOptions.Mode.NIBBLE);
+        byte[] nibble = compress(text, options);
+        check("Nibble round trip on text", text, decompress(nibble));
+        check("Nibble round trip on binary", binary, decompress(compress(binary, options)));
+        System.out.println("Order-0 size: " + compress(text, new HuffmanOptions()).length
+                + " bytes, nibble size: " + nibble.length + " bytes");
+
+        HuffmanTree tree = new HuffmanTree(16);
+        for (int i = 0; i < 1000; i++) {
+            tree.update(i * 7 % 16);
+        }
+        int depth = tree.getPathToNode(tree.getNode(0)).length();
+        if (tree.getSymbolBits() == 4 && depth <= 5) {
+            System.out.println("Test passed: 16-leaf tree is shallow with 4-bit escapes");
+        } else {
+            System.out.println("Test failed: small tree has depth " + depth);
+        }
+    }
+
+    public static void testInterleavedStreams() throws IOException {
+        byte[] text = sampleText();
+        for (int streams : new int[] {1, 2, 4, 8}) {
+            HuffmanOptions options = new HuffmanOptions().mode(HuffmanOptions.Mode.INTERLEAVED)
+                    .streams(streams).blockSize(3000);
+            byte[] compressed = compress(text, options);
+            check("Interleaved round trip, " + streams + " streams", text, decompress(compressed));
+            System.out.println(streams + " streams: " + compressed.length + " bytes");
+        }
+        // Block length not a multiple of the stream count.
+        check("Interleaved uneven streams", text, decompress(compress(text,
+                new HuffmanOptions().mode(HuffmanOptions.Mode.INTERLEAVED).streams(8).blockSize(2999))));
+    }
+
+    public static void testWordTokens() throws IOException {
+        StringBuilder log = new StringBuilder();
+        Random random = new Random(23);
+        String[] levels = {"INFO", "WARN", "DEBUG"};
+        for (int i = 0; i < 2000; i++) {
+            log.append("2024-03-01 10:").append(10 + i % 50).append(' ').append(levels[random.nextInt(3)])
+                    .append(" user_").append(random.nextInt(40)).append(" fetched /api/items in ")
+                    .append(random.nextInt(200)).append(" ms\n");
+        }
+        byte[] text = log.toString().getBytes("UTF-8");
+        HuffmanOptions options = new HuffmanOptions().mode(HuffmanOptions.Mode.WORD).blockSize(10000);
+        byte[] words = compress(text, options);
+        check("Word round trip on logs", text, decompress(words));
+        System.out.println("Order-0 size: " + compress(text, new HuffmanOptions()).length
+                + " bytes, word size: " + words.length + " bytes");
+
+        byte[] longToken = new byte[1000];
+        Arrays.fill(longToken, (byte) 'x');
+        check("Word round trip on a token longer than the limit", longToken, decompress(compress(longToken, options)));
+        byte[] binary = new byte[5000];
+        random.nextBytes(binary);
+        check("Word round trip on binary", binary, decompress(compress(binary, options)));
+
+        // Few distinct tokens means far fewer tree operations than bytes.
+        WordCoder coder = new WordCoder();
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        coder.encodeBlock(new Encoder(new Encoder.BitOutputStream(sink)), text, text.length);
+        if (coder.getDictionarySize() < 500) {
+            System.out.println("Test passed: " + coder.getDictionarySize() + " distinct tokens");
+        } else {
+            System.out.println("Test failed: dictionary grew to " + coder.getDictionarySize());
+        }
+    }
+
+    public static void testManyDistinctTokens() throws IOException {
+        // Request ids, addresses and sizes: most tokens are seen once, so the
+        // id tree grows to thousands of symbols.
+        StringBuilder log = new StringBuilder();
+        Random random = new Random(31);
+        for (int i = 0; i < 3000; i++) {
+            log.append("12:").append(10 + i % 50).append(':').append(random.nextInt(60))
+                    .append(" GET /api/items id=").append(Long.toHexString(random.nextLong() & 0xFFFFFFFFFFL))
+                    .append(" from 10.").append(random.nextInt(256)).append('.').append(random.nextInt(256))
+                    .append(" bytes=").append(random.nextInt(1 << 20)).append('\n');
+        }
+        byte[] text = log.toString().getBytes("UTF-8");
+        HuffmanOptions options = new HuffmanOptions().mode(HuffmanOptions.Mode.WORD);
+
+        long wordNanos = Long.MAX_VALUE;
+        long order0Nanos = Long.MAX_VALUE;
+        byte[] words = null;
+        for (int round = 0; round < 2; round++) {
+            long start = System.nanoTime();
+            words = compress(text, options);
+            wordNanos = Math.min(wordNanos, System.nanoTime() - start);
+            start = System.nanoTime();
+            compress(text, new HuffmanOptions());
+            order0Nanos = Math.min(order0Nanos, System.nanoTime() - start);
+        }
+        check("Word round trip with many distinct tokens", text, decompress(words));
+
+        WordCoder coder = new WordCoder();
+        coder.encodeBlock(new Encoder(new Encoder.BitOutputStream(OutputStream.nullOutputStream())), text, text.length);
+        System.out.printf("%d distinct tokens, word: %.1f ms, order-0: %.1f ms%n",
+                coder.getDictionarySize(), wordNanos / 1e6, order0Nanos / 1e6);
+        if (coder.getDictionarySize() > 4000 && wordNanos < 2 * order0Nanos) {
+            System.out.println("Test passed: word coding keeps pace with order-0");
+        } else {
+            System.out.println("Test failed: word coding slows down as the dictionary grows");
+        }
+    }
+
+    public static void testRecordTransforms() throws IOException {
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(records);
+        Random random = new Random(29);
+        long timestamp = 1_700_000_000_000L;
+        for (int i = 0; i < 4000; i++) {
+            timestamp += 1000 + random.nextInt(20);
+            out.writeLong(timestamp);
+            out.writeInt(i * 3);
+            out.writeFloat(21.5f + random.nextInt(8) / 4.0f);
+        }
+        out.write(new byte[] {1, 2, 3});
+        byte[] data = records.toByteArray();
+
+        byte[] plain = compress(data, new HuffmanOptions().batchSize(256));
+        HuffmanOptions.Transform[] transforms = {HuffmanOptions.Transform.DELTA, HuffmanOptions.Transform.DELTA,
+                HuffmanOptions.Transform.XOR, HuffmanOptions.Transform.SHUFFLE};
+        int[] widths = {8, 4, 4, 16};
+        for (int t = 0; t < transforms.length; t++) {
+            HuffmanOptions options = new HuffmanOptions().batchSize(256).blockSize(16 * 1024 + 5)
+                    .transform(transforms[t], widths[t]);
+            byte[] compressed = compress(data, options);
+            check(transforms[t] + " width " + widths[t] + " round trip", data, decompress(compressed));
+            System.out.println(transforms[t] + " width " + widths[t] + ": " + compressed.length
+                    + " bytes (no transform: " + plain.length + ")");
+        }
+
+        // Same field of consecutive records, XORed: mostly zero bytes.
+        byte[] xored = compress(data, new HuffmanOptions().batchSize(256)
+                .transform(HuffmanOptions.Transform.XOR, 16));
+        ByteArrayOutputStream counters = new ByteArrayOutputStream();
+        DataOutputStream counterOut = new DataOutputStream(counters);
+        for (int i = 0; i < 10000; i++) {
+            counterOut.writeInt(5_000_000 + i * 17 + random.nextInt(3));
+        }
+        byte[] series = counters.toByteArray();
+        byte[] deltas = compress(series, new HuffmanOptions().batchSize(256)
+                .transform(HuffmanOptions.Transform.DELTA, 4));
+        check("DELTA on a counter series", series, decompress(deltas));
+        if (xored.length < plain.length && deltas.length < compress(series, new HuffmanOptions().batchSize(256)).length) {
+            System.out.println("Test passed: transforms shrink record and counter data");
+        } else {
+            System.out.println("Test failed: XOR " + xored.length + " vs " + plain.length + ", delta " + deltas.length);
+        }
+
+        try {
+            new HuffmanOptions().transform(HuffmanOptions.Transform.DELTA, 3);
+            System.out.println("Test failed: 3-byte delta should be rejected");
+        } catch (IllegalArgumentException e) {
+            System.out.println("Test passed: unsupported delta width rejected");
+        }
+    }
+
+    public static void testColumns() throws IOException {
+        StringBuilder csv = new StringBuilder("id,status,amount,comment\n");
+        Random random = new Random(31);
+        String[] statuses = {"OPEN", "CLOSED", "PENDING"};
+        String[] comments = {"\"late, but paid\"", "ok", "needs review", "\"split, twice, again\""};
+        for (int i = 0; i < 3000; i++) {
+            csv.append(100000 + i).append(',').append(statuses[random.nextInt(3)]).append(',')
+                    .append(random.nextInt(10000)).append('.').append(random.nextInt(100)).append(',')
+                    .append(comments[random.nextInt(4)]).append('\n');
+        }
+        byte[] data = csv.toString().getBytes("UTF-8");
+
+        HuffmanOptions options = new HuffmanOptions().mode(HuffmanOptions.Mode.COLUMNS).blockSize(7000);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        ColumnStatistics statistics;
+        try (AdaptiveHuffmanOutputStream out = new AdaptiveHuffmanOutputStream(compressed, options)) {
+            out.write(data);
+            out.finish();
+            statistics = out.getColumnStatistics();
+        }
+        check("Columns round trip on CSV", data, decompress(compressed.toByteArray()));
+        byte[] tsv = csv.toString().replace(',', '\t').getBytes("UTF-8");
+        check("Columns round trip on TSV", tsv,
+                decompress(compress(tsv, new HuffmanOptions().mode(HuffmanOptions.Mode.COLUMNS).delimiter('\t'))));
+        check("Columns round trip past the column cap", data,
+                decompress(compress(data, new HuffmanOptions().mode(HuffmanOptions.Mode.COLUMNS).maxColumns(2))));
+
+        int order0 = compress(data, new HuffmanOptions()).length;
+        long total = 0;
+        for (int column = 0; column < statistics.getColumnCount(); column++) {
+            total += statistics.getInputBytes(column);
+        }
+        // Quoted commas must not open a fifth column.
+        if (compressed.size() < order0 && statistics.getColumnCount() == 4 && total == data.length) {
+            System.out.println("Test passed: per-column trees beat one tree");
+        } else {
+            System.out.println("Test failed: columns " + compressed.size() + " bytes vs order-0 " + order0
+                    + ", " + statistics.getColumnCount() + " columns");
+        }
+        System.out.print(statistics);
+    }
+
+    public static void testNewSymbolIndexes() throws IOException {
+        Random random = new Random(45);
+        boolean allPassed = true;
+        for (int alphabet : new int[] { 2, 3, 16, 100, 256, 1000 }) {
+            int[] symbols = new int[alphabet];
+            for (int i = 0; i < alphabet; i++) symbols[i] = i;
+            for (int i = alphabet - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int t = symbols[i]; symbols[i] = symbols[j]; symbols[j] = t;
+            }
+
+            ByteArrayOutputStream sink = new ByteArrayOutputStream();
+            Encoder.BitOutputStream bits = new Encoder.BitOutputStream(sink);
+            Encoder encoder = new Encoder(bits);
+            HuffmanTree tree = new HuffmanTree(alphabet);
+            long escapeBits = 0;
+            for (int symbol : symbols) {
+                long before = encoder.getBitsWritten() + tree.getPathToNYT().length();
+                encoder.encodeSymbol(tree, symbol);
+                escapeBits += encoder.getBitsWritten() - before;
+            }
+            bits.padToByte();
+
+            Decoder decoder = new Decoder(new Decoder.BitInputStream(new ByteArrayInputStream(sink.toByteArray())));
+            HuffmanTree decoded = new HuffmanTree(alphabet);
+            for (int symbol : symbols) {
+                if (decoder.decodeSymbol(decoded) != symbol) {
+                    allPassed = false;
+                }
+            }
+            if (escapeBits >= (long) alphabet * tree.getSymbolBits() && alphabet > 2) {
+                System.out.println("Test failed: " + alphabet + " new symbols took " + escapeBits + " bits");
+                allPassed = false;
+            }
+        }
+        if (allPassed) {
+            System.out.println("Test passed: every new symbol decodes and escapes shrink");
+        } else {
+            System.out.println("Test failed: new symbol index coding");
+        }
+
+        // A short message where every byte is new to the tree.
+        byte[] message = "{\"id\":42,\"op\":\"get\",\"key\":\"user:7\"}".getBytes("UTF-8");
+        byte[] compressed = compress(message, new HuffmanOptions());
+        check("Short message round trip", message, decompress(compressed));
+
+        // Version 1 member: one Huffman block holding "ab" with 8 raw bits per
+        // new symbol, i.e. 01100001 0 01100010 padded to three bytes.
+        byte[] legacy = { (byte) 0xAD, 0x48, 1, 0,
+                (byte) AdaptiveHuffmanOutputStream.BLOCK_HUFFMAN, 0, 0, 0, 2, 0, 0, 0, 3,
+                0x61, 0x31, 0x00, (byte) AdaptiveHuffmanOutputStream.BLOCK_END };
+        check("Version 1 stream still decodes", "ab".getBytes("UTF-8"), decompress(legacy));
+    }
+
+    public static void testReusableCodecs() throws Exception {
+        Random random = new Random(46);
+        String[] words = { "GET", "PUT", "/api/v1/users/", "id", "=", "&", "name", "session", "200", "OK", " " };
+        byte[][] messages = new byte[200][];
+        for (int m = 0; m < messages.length; m++) {
+            StringBuilder sb = new StringBuilder();
+            int count = 1 + random.nextInt(30);
+            for (int w = 0; w < count; w++) {
+                sb.append(words[random.nextInt(words.length)]);
+            }
+            messages[m] = sb.toString().getBytes("UTF-8");
+        }
+
+        // A reset encoder must write the same bits as a fresh one.
+        ByteArrayOutputStream reused = new ByteArrayOutputStream();
+        Encoder encoder = new Encoder(new Encoder.BitOutputStream(reused));
+        boolean sameBits = true;
+        for (byte[] message : messages) {
+            reused.reset();
+            encoder.reset(reused);
+            ByteArrayOutputStream fresh = new ByteArrayOutputStream();
+            Encoder freshEncoder = new Encoder(new Encoder.BitOutputStream(fresh));
+            for (byte b : message) {
+                encoder.encodeSymbol(b & 0xFF);
+                freshEncoder.encodeSymbol(b & 0xFF);
+            }
+            encoder.finish();
+            freshEncoder.finish();
+            sameBits &= Arrays.equals(reused.toByteArray(), fresh.toByteArray());
+        }
+        if (sameBits) {
+            System.out.println("Test passed: reset encoder matches a fresh one");
+        } else {
+            System.out.println("Test failed: reset encoder differs from a fresh one");
+        }
+
+        // Messages back to back on one stream, read with the pooled facade.
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        for (byte[] message : messages) {
+            AdaptiveHuffman.compressMessage(message, 0, message.length, stream);
+        }
+        InputStream in = new ByteArrayInputStream(stream.toByteArray());
+        byte[] buffer = new byte[4096];
+        boolean allMatch = true;
+        for (byte[] message : messages) {
+            int length = AdaptiveHuffman.decompressMessage(in, buffer, 0);
+            allMatch &= Arrays.equals(message, Arrays.copyOf(buffer, length));
+        }
+        allMatch &= in.read() == -1;
+        if (allMatch) {
+            System.out.println("Test passed: concatenated messages decode one by one");
+        } else {
+            System.out.println("Test failed: concatenated messages");
+        }
+        check("Empty message round trip", new byte[0],
+                AdaptiveHuffman.decompressMessage(AdaptiveHuffman.compressMessage(new byte[0])));
+
+        // A corrupt length must not allocate what it claims.
+        byte[][] corrupt = { { (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07 },
+                             { (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F },
+                             { (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x01 } };
+        for (byte[] message : corrupt) {
+            try {
+                AdaptiveHuffman.decompressMessage(message);
+                System.out.println("Test failed: corrupt length " + hex(message) + " accepted");
+            } catch (IOException e) {
+                System.out.println("Test passed: corrupt length " + hex(message) + " rejected (" + e.getMessage() + ")");
+            } catch (OutOfMemoryError e) {
+                System.out.println("Test failed: corrupt length " + hex(message) + " ran out of memory");
+            }
+        }
+
+        // Several threads sharing the pool.
+        Thread[] threads = new Thread[8];
+        boolean[] failed = new boolean[1];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                try {
+                    for (int round = 0; round < 20; round++) {
+                        for (byte[] message : messages) {
+                            byte[] decoded = AdaptiveHuffman.decompressMessage(AdaptiveHuffman.compressMessage(message));
+                            if (!Arrays.equals(message, decoded)) failed[0] = true;
+                        }
+                    }
+                } catch (IOException e) {
+                    failed[0] = true;
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (!failed[0]) {
+            System.out.println("Test passed: pooled codecs across threads");
+        } else {
+            System.out.println("Test failed: pooled codecs across threads");
+        }
+
+        // Steady state: compress into a reused buffer, decode into a reused array.
+        java.lang.management.ThreadMXBean bean = java.lang.management.ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+            long threadId = Thread.currentThread().getId();
+            ByteArrayOutputStream sink = new ByteArrayOutputStream(1 << 20);
+            ByteArrayInputStream source = new ByteArrayInputStream(stream.toByteArray());
+            long allocated = 0;
+            for (int round = 0; round < 3; round++) {
+                long before = threadBean.getThreadAllocatedBytes(threadId);
+                sink.reset();
+                source.reset();
+                for (byte[] message : messages) {
+                    AdaptiveHuffman.compressMessage(message, 0, message.length, sink);
+                    AdaptiveHuffman.decompressMessage(source, buffer, 0);
+                }
+                allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+            }
+            if (allocated / messages.length < 64) {
+                System.out.println("Test passed: " + allocated + " bytes allocated for " + messages.length
+                        + " warm round trips");
+            } else {
+                System.out.println("Test failed: " + allocated + " bytes allocated for " + messages.length
+                        + " warm round trips");
+            }
+        }
+    }
+
+    public static void testMessageDictionary() throws Exception {
+        Random random = new Random(50);
+        String[] words = { "{\"id\":", "\"user\":", "\"status\":\"ok\"", "\"items\":[", "]", "}", ",",
+                "1234", "\"alice\"", "\"bob\"", "true", "false", "null" };
+        List<byte[]> samples = new ArrayList<>();
+        byte[][] messages = new byte[300][];
+        for (int m = 0; m < 500; m++) {
+            StringBuilder sb = new StringBuilder();
+            int length = 100 + random.nextInt(1900);
+            while (sb.length() < length) {
+                sb.append(words[random.nextInt(words.length)]);
+            }
+            byte[] message = sb.toString().getBytes("UTF-8");
+            if (m < 200) samples.add(message); else messages[m - 200] = message;
+        }
+        MessageDictionary dictionary = MessageDictionary.train(samples);
+
+        // A tree reset from a template is the same tree, and stays the same under updates.
+        HuffmanTree trained = new HuffmanTree();
+        for (byte b : samples.get(0)) {
+            trained.update(b & 0xFF);
+        }
+        HuffmanTree copy = new HuffmanTree();
+        copy.update('x');
+        copy.reset(trained.snapshot());
+        boolean sameTree = trained.toString().equals(copy.toString());
+        for (byte b : messages[0]) {
+            trained.update(b & 0xFF);
+            copy.update(b & 0xFF);
+            sameTree &= trained.getPathToNYT().equals(copy.getPathToNYT());
+        }
+        sameTree &= trained.toString().equals(copy.toString());
+        if (sameTree) {
+            System.out.println("Test passed: template copy matches the original tree");
+        } else {
+            System.out.println("Test failed: template copy differs from the original tree");
+        }
+
+        // Messages back to back with the dictionary, smaller than without it.
+        ByteArrayOutputStream plain = new ByteArrayOutputStream();
+        ByteArrayOutputStream trainedStream = new ByteArrayOutputStream();
+        for (byte[] message : messages) {
+            AdaptiveHuffman.compressMessage(message, 0, message.length, plain);
+            AdaptiveHuffman.compressMessage(message, 0, message.length, trainedStream, dictionary);
+        }
+        InputStream in = new ByteArrayInputStream(trainedStream.toByteArray());
+        byte[] buffer = new byte[4096];
+        boolean allMatch = true;
+        for (byte[] message : messages) {
+            int length = AdaptiveHuffman.decompressMessage(in, buffer, 0, dictionary);
+            allMatch &= Arrays.equals(message, Arrays.copyOf(buffer, length));
+        }
+        allMatch &= in.read() == -1;
+        if (allMatch) {
+            System.out.println("Test passed: dictionary messages decode one by one");
+        } else {
+            System.out.println("Test failed: dictionary messages");
+        }
+        if (trainedStream.size() < plain.size()) {
+            System.out.println("Test passed: " + trainedStream.size() + " bytes with the dictionary vs "
+                    + plain.size() + " without");
+        } else {
+            System.out.println("Test failed: dictionary did not help (" + trainedStream.size() + " vs "
+                    + plain.size() + " bytes)");
+        }
+
+        // Coding a message must not change the template.
+        byte[] first = AdaptiveHuffman.compressMessage(messages[7], dictionary);
+        for (int m = 0; m < 20; m++) {
+            AdaptiveHuffman.compressMessage(messages[m], dictionary);
+        }
+        check("Template unchanged by use", first, AdaptiveHuffman.compressMessage(messages[7], dictionary));
+
+        MessageDictionary restored = MessageDictionary.fromByteArray(dictionary.toByteArray());
+        check("Serialized dictionary codes the same", first, AdaptiveHuffman.compressMessage(messages[7], restored));
+        check("Unseen bytes escaped", new byte[] { 0, (byte) 0xFF, 'q' },
+                AdaptiveHuffman.decompressMessage(AdaptiveHuffman.compressMessage(new byte[] { 0, (byte) 0xFF, 'q' },
+                        dictionary), dictionary));
+
+        try {
+            new HuffmanTree(16).reset(trained.snapshot());
+            System.out.println("Test failed: template for another alphabet accepted");
+        } catch (IllegalArgumentException e) {
+            System.out.println("Test passed: template for another alphabet rejected");
+        }
+
+        // Steady state: copying the template allocates nothing either.
+        java.lang.management.ThreadMXBean bean = java.lang.management.ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+            long threadId = Thread.currentThread().getId();
+            ByteArrayOutputStream sink = new ByteArrayOutputStream(1 << 20);
+            ByteArrayInputStream source = new ByteArrayInputStream(trainedStream.toByteArray());
+            long allocated = 0;
+            for (int round = 0; round < 3; round++) {
+                long before = threadBean.getThreadAllocatedBytes(threadId);
+                sink.reset();
+                source.reset();
+                for (byte[] message : messages) {
+                    AdaptiveHuffman.compressMessage(message, 0, message.length, sink, dictionary);
+                    AdaptiveHuffman.decompressMessage(source, buffer, 0, dictionary);
+                }
+                allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+            }
+            if (allocated / messages.length < 64) {
+                System.out.println("Test passed: " + allocated + " bytes allocated for " + messages.length
+                        + " warm dictionary round trips");
+            } else {
+                System.out.println("Test failed: " + allocated + " bytes allocated for " + messages.length
+                        + " warm dictionary round trips");
+            }
+
+            // Rebuilding a tree takes its nodes from the pool, not the heap.
+            HuffmanTree tree = new HuffmanTree();
+            HuffmanTree.Template template = dictionary.getTemplate();
+            int[] extra = new int[256];
+            Arrays.fill(extra, 1);
+            for (int round = 0; round < 3; round++) {
+                long before = threadBean.getThreadAllocatedBytes(threadId);
+                for (int i = 0; i < 100; i++) {
+                    tree.reset(template);
+                    for (byte b : messages[i]) {
+                        tree.update(b & 0xFF);
+                    }
+                    tree.rebuild(extra);
+                }
+                allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+            }
+            if (allocated / 100 < 1024) {
+                System.out.println("Test passed: " + allocated + " bytes allocated for 100 warm rebuilds");
+            } else {
+                System.out.println("Test failed: " + allocated + " bytes allocated for 100 warm rebuilds");
+            }
+        }
+    }
+
+    private static int compareSuffixes(int[] text, int a, int b) {
+        while (a < text.length && b < text.length) {
+            if (text[a] != text[b]) return text[a] - text[b];
+            a++;
+            b++;
+        }
+        return (text.length - a) - (text.length - b);
+    }
+
+    private static int[] blockTypes(byte[] compressed) throws IOException {
+        return walkBlocks(compressed, false);
+    }
+
+    private static int[] blockCodedLengths(byte[] compressed) throws IOException {
+        return walkBlocks(compressed, true);
+    }
+
+    // Types or coded lengths of the blocks of a stream's first member.
+    private static int[] walkBlocks(byte[] compressed, boolean lengths) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(compressed));
+        in.skipBytes(3);
+        int options = in.readUnsignedByte();
+        for (int i = 0; i < options; i++) {
+            in.readUnsignedByte();
+            Varint.read(in);
+        }
+        int[] types = new int[0];
+        int type;
+        while ((type = in.readUnsignedByte()) != AdaptiveHuffmanOutputStream.BLOCK_END) {
+            int rawLength = Varint.read(in);
+            int codedLength = type == AdaptiveHuffmanOutputStream.BLOCK_STORED ? rawLength + 1 : Varint.read(in);
+            in.skipBytes(codedLength);
+            types = Arrays.copyOf(types, types.length + 1);
+            types[types.length - 1] = lengths ? codedLength : type;
+        }
+        return types;
+    }
+
+    public static void main(String[] args) {
+        try {
+            System.out.println("Running coding mode tests...\n");
+
+            System.out.println("\n=== Test 1: Order-1 Round Trip ===");
+            testOrder1RoundTrip();
+
+            System.out.println("\n=== Test 2: Order-1 Pool Eviction ===");
+            testOrder1PoolEviction();
+
+            System.out.println("\n=== Test 3: Auto Mode Picks Per Block ===");
+            testAutoModePicksPerBlock();
+
+            System.out.println("\n=== Test 4: Batched Updates ===");
+            testBatchedUpdates();
+
+            System.out.println("\n=== Test 5: Semi-Adaptive Freeze ===");
+            testSemiAdaptiveFreeze();
+
+            System.out.println("\n=== Test 6: Canonical Code Shared ===");
+            testCanonicalCodeShared();
+
+            System.out.println("\n=== Test 7: Static Two-Pass ===");
+            testStaticTwoPass();
+
+            System.out.println("\n=== Test 8: Range Coder ===");
+            testRangeCoder();
+
+            System.out.println("\n=== Test 9: LZ77 ===");
+            testLZ77();
+
+            System.out.println("\n=== Test 10: BWT ===");
+            testBWT();
+
+            System.out.println("\n=== Test 11: Run-Length Stage ===");
+            testRunLength();
+
+            System.out.println("\n=== Test 12: Nibble Split ===");
+            testNibbleSplit();
+
+            System.out.println("\n=== Test 13: Interleaved Streams ===");
+            testInterleavedStreams();
+
+            System.out.println("\n=== Test 14: Word Tokens ===");
+            testWordTokens();
+
+            System.out.println("\n=== Test 15: Record Transforms ===");
+            testRecordTransforms();
+
+            System.out.println("\n=== Test 16: Delimited Columns ===");
+            testColumns();
+
+            System.out.println("\n=== Test 17: New Symbol Indexes ===");
+            testNewSymbolIndexes();
+
+            System.out.println("\n=== Test 18: Reusable Codecs ===");
+            testReusableCodecs();
+
+            System.out.println("\n=== Test 19: Message Dictionary ===");
+            testMessageDictionary();
+
+            System.out.println("\n=== Test 20: Many Distinct Tokens ===");
+            testManyDistinctTokens();
+
+            System.out.println("\nAll tests completed.");
+        } catch (Exception e) {
+            System.err.println("Error running tests: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,251 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class HuffmanArchiveTest {
+
+    private static Path createSourceTree() throws IOException {
+        Path root = Files.createTempDirectory("test_archive_src");
+        Files.createDirectories(root.resolve("conf/nested"));
+        for (int i = 0; i < 50; i++) {
+            StringBuilder config = new StringBuilder();
+            for (int j = 0; j <= i; j++) {
+                config.append("key.").append(j).append(" = value-").append(i * j).append('\n');
+            }
+            Files.write(root.resolve("conf/service" + i + ".properties"), config.toString().getBytes("UTF-8"));
+        }
+        Files.write(root.resolve("conf/nested/empty.txt"), new byte[0]);
+        Files.write(root.resolve("README"), "archive test tree\n".getBytes("UTF-8"));
+        return root;
+    }
+
+    private static void deleteTree(Path root) throws IOException {
+        try (Stream<Path> walk = Files.walk(root)) {
+            walk.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private static boolean sameContents(Path expected, Path actual) throws IOException {
+        return Files.exists(actual) && Arrays.equals(Files.readAllBytes(expected), Files.readAllBytes(actual));
+    }
+
+    public static void testPackAndExtractAll() throws IOException {
+        Path source = createSourceTree();
+        Path output = Files.createTempDirectory("test_archive_out");
+        File archive = File.createTempFile("test_archive", ".aha");
+
+        List<HuffmanArchive.Entry> entries = HuffmanArchive.pack(source.toString(), archive.getAbsolutePath(), 4);
+        HuffmanArchive.extractAll(archive.getAbsolutePath(), output.toString(), 4);
+
+        boolean allMatch = entries.size() == 52;
+        for (HuffmanArchive.Entry entry : entries) {
+            allMatch &= sameContents(source.resolve(entry.name), output.resolve(entry.name));
+        }
+
+        if (allMatch) {
+            System.out.println("Test passed: all " + entries.size() + " members extracted");
+        } else {
+            System.out.println("Test failed: extracted tree doesn't match source");
+        }
+        System.out.println("Archive size: " + archive.length() + " bytes");
+
+        deleteTree(source);
+        deleteTree(output);
+        archive.delete();
+    }
+
+    public static void testExtractSingleMember() throws IOException {
+        Path source = createSourceTree();
+        File archive = File.createTempFile("test_archive", ".aha");
+        File extracted = File.createTempFile("test_member", ".properties");
+
+        HuffmanArchive.pack(source.toString(), archive.getAbsolutePath(), 2);
+        HuffmanArchive.extract(archive.getAbsolutePath(), "conf/service17.properties", extracted.getAbsolutePath());
+
+        if (sameContents(source.resolve("conf/service17.properties"), extracted.toPath())) {
+            System.out.println("Test passed: single member extracted");
+        } else {
+            System.out.println("Test failed: single member doesn't match source");
+        }
+
+        try {
+            HuffmanArchive.extract(archive.getAbsolutePath(), "missing.txt", extracted.getAbsolutePath());
+            System.out.println("Test failed: missing member should throw");
+        } catch (FileNotFoundException e) {
+            System.out.println("Test passed: missing member throws");
+        }
+
+        deleteTree(source);
+        archive.delete();
+        extracted.delete();
+    }
+
+    public static void testCorruptMemberDetected() throws IOException {
+        Path source = createSourceTree();
+        File archive = File.createTempFile("test_archive", ".aha");
+        File extracted = File.createTempFile("test_member", ".txt");
+
+        HuffmanArchive.pack(source.toString(), archive.getAbsolutePath(), 2);
+        HuffmanArchive.Entry readme = null;
+        for (HuffmanArchive.Entry entry : HuffmanArchive.list(archive.getAbsolutePath())) {
+            if (entry.name.equals("README")) readme = entry;
+        }
+
+        try (RandomAccessFile file = new RandomAccessFile(archive, "rw")) {
+            long position = readme.offset + readme.compressedSize - 3;
+            file.seek(position);
+            int b = file.read();
+            file.seek(position);
+            file.write(b ^ 0x5A);
+        }
+
+        try {
+            HuffmanArchive.extract(archive.getAbsolutePath(), "README", extracted.getAbsolutePath());
+            System.out.println("Test failed: corrupt member should be rejected");
+        } catch (IOException e) {
+            System.out.println("Test passed: corrupt member rejected (" + e.getMessage() + ")");
+        }
+
+        deleteTree(source);
+        archive.delete();
+        extracted.delete();
+    }
+
+    private static long directoryOffset(File archive) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(archive, "r")) {
+            file.seek(file.length() - 12);
+            return file.readLong();
+        }
+    }
+
+    public static void testCorruptDirectoryCount() throws IOException {
+        Path source = createSourceTree();
+        File archive = File.createTempFile("test_archive", ".aha");
+        HuffmanArchive.pack(source.toString(), archive.getAbsolutePath(), 2);
+        long directoryOffset = directoryOffset(archive);
+
+        for (int count : new int[] { -1, Integer.MAX_VALUE, 53 }) {
+            try (RandomAccessFile file = new RandomAccessFile(archive, "rw")) {
+                file.seek(directoryOffset);
+                file.writeInt(count);
+            }
+            try {
+                HuffmanArchive.list(archive.getAbsolutePath());
+                System.out.println("Test failed: directory count " + count + " accepted");
+            } catch (IOException e) {
+                System.out.println("Test passed: directory count " + count + " rejected (" + e.getMessage() + ")");
+            }
+        }
+
+        deleteTree(source);
+        archive.delete();
+    }
+
+    public static void testEscapingMemberName() throws IOException {
+        // pack never writes such a name, so build the archive by hand.
+        ByteArrayOutputStream member = new ByteArrayOutputStream();
+        try (AdaptiveHuffmanOutputStream out = new AdaptiveHuffmanOutputStream(member)) {
+            out.write("escaped\n".getBytes("UTF-8"));
+        }
+        java.util.zip.CRC32 crc = new java.util.zip.CRC32();
+        crc.update("escaped\n".getBytes("UTF-8"));
+        File archive = File.createTempFile("test_archive", ".aha");
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(archive))) {
+            out.writeInt(HuffmanArchive.ARCHIVE_MAGIC);
+            member.writeTo(out);
+            out.writeInt(1);
+            out.writeUTF("../escaped.txt");
+            out.writeLong(4);
+            out.writeLong(member.size());
+            out.writeLong(8);
+            out.writeInt((int) crc.getValue());
+            out.writeLong(4 + member.size());
+            out.writeInt(HuffmanArchive.ARCHIVE_MAGIC);
+        }
+
+        Path parent = Files.createTempDirectory("test_archive_parent");
+        Path output = Files.createDirectory(parent.resolve("out"));
+        try {
+            HuffmanArchive.extractMember(archive.getAbsolutePath(), "../escaped.txt", output.toString());
+            System.out.println("Test failed: member extracted outside the output directory");
+        } catch (IOException e) {
+            if (Files.exists(parent.resolve("escaped.txt"))) {
+                System.out.println("Test failed: escaping member written before it was rejected");
+            } else {
+                System.out.println("Test passed: escaping member rejected (" + e.getMessage() + ")");
+            }
+        }
+
+        deleteTree(parent);
+        archive.delete();
+    }
+
+    private static long spillFiles() throws IOException {
+        try (Stream<Path> files = Files.list(Paths.get(System.getProperty("java.io.tmpdir")))) {
+            return files.filter(path -> path.getFileName().toString().startsWith("huffman-archive")).count();
+        }
+    }
+
+    public static void testLargeMemberSpills() throws IOException {
+        Path source = Files.createTempDirectory("test_archive_src");
+        Path output = Files.createTempDirectory("test_archive_out");
+        File archive = File.createTempFile("test_archive", ".aha");
+        java.util.Random random = new java.util.Random(29);
+        try (Writer writer = Files.newBufferedWriter(source.resolve("large.log"))) {
+            for (int line = 0; line < 100000; line++) {
+                writer.write(random.nextInt(1 << 30) + " " + Long.toHexString(random.nextLong()) + "\n");
+            }
+        }
+        Files.write(source.resolve("small.txt"), "small member\n".getBytes("UTF-8"));
+        long spillsBefore = spillFiles();
+
+        List<HuffmanArchive.Entry> entries = HuffmanArchive.pack(source.toString(), archive.getAbsolutePath(), 2);
+        HuffmanArchive.extractAll(archive.getAbsolutePath(), output.toString(), 2);
+
+        boolean spilled = entries.get(0).compressedSize > HuffmanArchive.MEMBER_MEMORY_LIMIT;
+        if (spilled && sameContents(source.resolve("large.log"), output.resolve("large.log"))
+                && sameContents(source.resolve("small.txt"), output.resolve("small.txt"))
+                && spillFiles() == spillsBefore) {
+            System.out.println("Test passed: " + entries.get(0).compressedSize
+                    + "-byte member went through a temp file, which was removed");
+        } else {
+            System.out.println("Test failed: large member (" + entries.get(0).compressedSize + " bytes)");
+        }
+
+        deleteTree(source);
+        deleteTree(output);
+        archive.delete();
+    }
+
+    public static void main(String[] args) {
+        try {
+            System.out.println("Running Huffman archive tests...\n");
+
+            System.out.println("\n=== Test 1: Pack And Extract All ===");
+            testPackAndExtractAll();
+
+            System.out.println("\n=== Test 2: Extract Single Member ===");
+            testExtractSingleMember();
+
+            System.out.println("\n=== Test 3: Corrupt Member Detected ===");
+            testCorruptMemberDetected();
+
+            System.out.println("\n=== Test 4: Corrupt Directory Count ===");
+            testCorruptDirectoryCount();
+
+            System.out.println("\n=== Test 5: Escaping Member Name ===");
+            testEscapingMemberName();
+
+            System.out.println("\n=== Test 6: Large Member Spills ===");
+            testLargeMemberSpills();
+
+            System.out.println("\nAll tests completed.");
+        } catch (IOException e) {
+            System.err.println("Error running tests: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,172 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.Arrays;
+import java.util.Random;
+
+public class HuffmanDaemonTest {
+
+    private static byte[] sampleText(int size) {
+        String[] words = { "daemon", "socket", "request", "frame", "payload", "worker", "\n", " ", ", " };
+        Random random = new Random(48);
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < size) {
+            sb.append(words[random.nextInt(words.length)]);
+        }
+        return sb.substring(0, size).getBytes();
+    }
+
+    private static byte[] request(Path socket, int op, byte[] payload) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        HuffmanDaemon.request(socket, op, new ByteArrayInputStream(payload), out);
+        return out.toByteArray();
+    }
+
+    public static void testRoundTrips(Path socket) throws IOException {
+        // Larger than the socket buffers, so request and response must stream at once.
+        byte[] data = sampleText(1024 * 1024);
+        byte[] compressed = request(socket, HuffmanDaemon.OP_COMPRESS, data);
+        byte[] restored = request(socket, HuffmanDaemon.OP_DECOMPRESS, compressed);
+
+        ByteArrayOutputStream local = new ByteArrayOutputStream();
+        try (InputStream in = new AdaptiveHuffmanInputStream(new ByteArrayInputStream(compressed))) {
+            in.transferTo(local);
+        }
+        if (Arrays.equals(data, restored) && Arrays.equals(data, local.toByteArray())) {
+            System.out.println("Test passed: streamed round trip of " + data.length + " bytes ("
+                    + compressed.length + " compressed)");
+        } else {
+            System.out.println("Test failed: streamed round trip");
+        }
+
+        byte[] message = "GET /status HTTP/1.1".getBytes();
+        byte[] coded = request(socket, HuffmanDaemon.OP_COMPRESS_MESSAGE, message);
+        if (Arrays.equals(message, request(socket, HuffmanDaemon.OP_DECOMPRESS_MESSAGE, coded))
+                && Arrays.equals(coded, AdaptiveHuffman.compressMessage(message))) {
+            System.out.println("Test passed: message round trip through the daemon");
+        } else {
+            System.out.println("Test failed: message round trip through the daemon");
+        }
+    }
+
+    public static void testErrorsReported(Path socket) throws IOException {
+        try {
+            request(socket, HuffmanDaemon.OP_DECOMPRESS, "not compressed".getBytes());
+            System.out.println("Test failed: corrupt input should be rejected");
+        } catch (IOException e) {
+            System.out.println("Test passed: daemon reported \"" + e.getMessage() + "\"");
+        }
+        // The daemon keeps serving after a failed request.
+        byte[] data = sampleText(1000);
+        if (Arrays.equals(data, request(socket, HuffmanDaemon.OP_DECOMPRESS,
+                request(socket, HuffmanDaemon.OP_COMPRESS, data)))) {
+            System.out.println("Test passed: daemon still serves after an error");
+        } else {
+            System.out.println("Test failed: daemon broken after an error");
+        }
+    }
+
+    public static void testMoreClientsThanWorkers(Path socket) throws Exception {
+        Thread[] clients = new Thread[12];
+        boolean[] ok = new boolean[clients.length];
+        for (int c = 0; c < clients.length; c++) {
+            int index = c;
+            clients[c] = new Thread(() -> {
+                try {
+                    byte[] data = sampleText(20000 + index);
+                    ok[index] = Arrays.equals(data, request(socket, HuffmanDaemon.OP_DECOMPRESS,
+                            request(socket, HuffmanDaemon.OP_COMPRESS, data)));
+                } catch (IOException e) {
+                    ok[index] = false;
+                }
+            });
+            clients[c].start();
+        }
+        boolean allOk = true;
+        for (int c = 0; c < clients.length; c++) {
+            clients[c].join(60000);
+            allOk &= ok[c];
+        }
+        if (allOk) {
+            System.out.println("Test passed: " + clients.length + " clients served by 2 workers");
+        } else {
+            System.out.println("Test failed: concurrent clients");
+        }
+    }
+
+    public static void testSocketOwnership(Path socket) throws IOException {
+        try {
+            new HuffmanDaemon(socket, 1).close();
+            System.out.println("Test failed: second daemon took over a live socket");
+        } catch (IOException e) {
+            System.out.println("Test passed: live socket not taken over");
+        }
+    }
+
+    public static void testMessageSizeLimit(Path socket, int maxMessageSize) throws IOException {
+        byte[] largest = sampleText(maxMessageSize);
+        byte[] coded = request(socket, HuffmanDaemon.OP_COMPRESS_MESSAGE, largest);
+        if (Arrays.equals(largest, request(socket, HuffmanDaemon.OP_DECOMPRESS_MESSAGE, coded))) {
+            System.out.println("Test passed: message of exactly " + maxMessageSize + " bytes accepted");
+        } else {
+            System.out.println("Test failed: message at the size limit");
+        }
+        for (int op : new int[] { HuffmanDaemon.OP_COMPRESS_MESSAGE, HuffmanDaemon.OP_DECOMPRESS_MESSAGE }) {
+            try {
+                request(socket, op, sampleText(maxMessageSize + 1));
+                System.out.println("Test failed: oversized '" + (char) op + "' payload accepted");
+            } catch (IOException e) {
+                System.out.println("Test passed: oversized '" + (char) op + "' payload refused (" + e.getMessage() + ")");
+            }
+        }
+        byte[] message = "after the limit".getBytes();
+        if (Arrays.equals(message, request(socket, HuffmanDaemon.OP_DECOMPRESS_MESSAGE,
+                request(socket, HuffmanDaemon.OP_COMPRESS_MESSAGE, message)))) {
+            System.out.println("Test passed: daemon still serves after an oversized payload");
+        } else {
+            System.out.println("Test failed: daemon broken after an oversized payload");
+        }
+    }
+
+    public static void main(String[] args) {
+        Path directory = null;
+        try {
+            System.out.println("Running Huffman daemon tests...\n");
+            directory = Files.createTempDirectory("test_daemon");
+            Path socket = directory.resolve("huffman.sock");
+            // A stale socket file from a dead daemon is replaced.
+            Files.write(socket, new byte[0]);
+
+            int maxMessageSize = 1 << 20;
+            try (HuffmanDaemon daemon = new HuffmanDaemon(socket, 2, maxMessageSize)) {
+                System.out.println("\n=== Test 1: Round Trips ===");
+                testRoundTrips(daemon.getSocketPath());
+
+                System.out.println("\n=== Test 2: Errors Reported ===");
+                testErrorsReported(daemon.getSocketPath());
+
+                System.out.println("\n=== Test 3: More Clients Than Workers ===");
+                testMoreClientsThanWorkers(daemon.getSocketPath());
+
+                System.out.println("\n=== Test 4: Socket Ownership ===");
+                testSocketOwnership(daemon.getSocketPath());
+
+                System.out.println("\n=== Test 5: Message Size Limit ===");
+                testMessageSizeLimit(daemon.getSocketPath(), maxMessageSize);
+            }
+            if (Files.exists(socket)) {
+                System.out.println("Test failed: socket file left behind");
+            } else {
+                System.out.println("Test passed: socket file removed on close");
+            }
+
+            System.out.println("\nAll tests completed.");
+        } catch (Exception e) {
+            System.err.println("Error running tests: " + e.getMessage());
+            e.printStackTrace();
+        } finally {
+            if (directory != null) {
+                directory.toFile().delete();
+            }
+        }
+    }
+}